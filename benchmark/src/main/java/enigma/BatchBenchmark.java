@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of converting one 256-character message under many keys: with a
+ *  machine per key, and with one BatchMachine for all of them.
+ *  @author Duc Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    /** Number of keys. */
+    @Param({ "64", "4096" })
+    public int keys;
+
+    /** Build the machines, copies of one machine with random settings
+     *  and ring settings, and the message. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet("upper");
+        Random random = new Random(keys);
+        Machine template = Fixtures.machine(alpha);
+        _machines = new ArrayList<>();
+        for (int k = 0; k < keys; k += 1) {
+            Machine m = template.copy();
+            char[] setting = new char[Fixtures.NAMES.length - 1];
+            for (int i = 0; i < setting.length; i += 1) {
+                setting[i] = alpha.toChar(random.nextInt(alpha.size()));
+            }
+            m.setRotors(new String(setting));
+            m.setRings(new String(setting));
+            _machines.add(m);
+        }
+        _message = Fixtures.message(alpha, 256).toCharArray();
+        _out = new char[keys][_message.length];
+    }
+
+    @Benchmark
+    public char[][] machines() {
+        for (int k = 0; k < keys; k += 1) {
+            _machines.get(k).copy().convert(_message, 0, _message.length,
+                                            _out[k], 0);
+        }
+        return _out;
+    }
+
+    @Benchmark
+    public char[][] batch() {
+        new BatchMachine(_machines).convert(_message, 0, _message.length,
+                                            _out, 0);
+        return _out;
+    }
+
+    /** One machine per key, each at its starting settings. */
+    private ArrayList<Machine> _machines;
+
+    /** Message converted under every key. */
+    private char[] _message;
+
+    /** Conversions of _message, one per key. */
+    private char[][] _out;
+
+}
@@ -0,0 +1,26 @@
+package enigma;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the JMH benchmarks whose names match ARGS[0] (all of them by
+ *  default) with the GC profiler, so that allocation rates are reported
+ *  next to timings.
+ *  Usage: java -cp benchmark/target/benchmarks.jar enigma.Benchmarks [REGEX]
+ *  @author Duc Nguyen
+ */
+public class Benchmarks {
+
+    /** Run the benchmarks selected by ARGS. */
+    public static void main(String... args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(args.length > 0 ? args[0] : "enigma\\..*Benchmark")
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+}
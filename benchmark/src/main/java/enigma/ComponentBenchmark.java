@@ -0,0 +1,107 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Per-operation costs of the classes on the conversion path: alphabet
+ *  lookup, permutation, rotor conversion and notch tests, and rotor
+ *  advance.  Each benchmark cycles through every index of the alphabet
+ *  so that no single table entry stays hot.
+ *  @author Duc Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentBenchmark {
+
+    /** Which alphabet to use (see Fixtures.alphabet). */
+    @Param({ "upper", "large" })
+    public String alphabet;
+
+    /** Build the fixtures. */
+    @Setup
+    public void setUp() {
+        _alpha = Fixtures.alphabet(alphabet);
+        _chars = Fixtures.alphabetChars(alphabet).toCharArray();
+        _rotor = Fixtures.rotors(_alpha).get(Fixtures.NAMES.length - 1);
+        _rotor.prepare();
+        _perm = _rotor.permutation();
+        _size = _alpha.size();
+    }
+
+    /** Return the next index to use. */
+    private int next() {
+        _index = _index + 1 == _size ? 0 : _index + 1;
+        return _index;
+    }
+
+    @Benchmark
+    public int alphabetToInt() {
+        return _alpha.toInt(_chars[next()]);
+    }
+
+    @Benchmark
+    public int permute() {
+        return _perm.permute(next());
+    }
+
+    @Benchmark
+    public int invert() {
+        return _perm.invert(next());
+    }
+
+    @Benchmark
+    public int convertForward() {
+        return _rotor.convertForward(next());
+    }
+
+    @Benchmark
+    public int convertBackward() {
+        return _rotor.convertBackward(next());
+    }
+
+    @Benchmark
+    public boolean atNotch() {
+        _rotor.set(next());
+        return _rotor.atNotch();
+    }
+
+    @Benchmark
+    public int advance() {
+        _rotor.advance();
+        return _rotor.setting();
+    }
+
+    /** The alphabet under test. */
+    private Alphabet _alpha;
+
+    /** Characters of _alpha, in order. */
+    private char[] _chars;
+
+    /** A moving rotor over _alpha, with its tables prepared. */
+    private Rotor _rotor;
+
+    /** The permutation of _rotor. */
+    private Permutation _perm;
+
+    /** Size of _alpha. */
+    private int _size;
+
+    /** Last index used. */
+    private int _index;
+
+}
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Randomly wired alphabets, rotors and machines shared by the
+ *  benchmarks.  Everything is generated from fixed seeds so that runs are
+ *  comparable.
+ *  @author Duc Nguyen
+ */
+final class Fixtures {
+
+    /** Number of characters in the "large" alphabet. */
+    static final int LARGE_SIZE = 2048;
+
+    /** Return the alphabet of KIND: "upper" for A-Z, or "large" for
+     *  LARGE_SIZE scattered CJK characters (which Alphabet indexes with
+     *  its sparse map). */
+    static Alphabet alphabet(String kind) {
+        return new Alphabet(alphabetChars(kind));
+    }
+
+    /** Return the characters of the alphabet of KIND. */
+    static String alphabetChars(String kind) {
+        switch (kind) {
+        case "upper":
+            return "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        case "large":
+            char[] chars = new char[LARGE_SIZE];
+            for (int i = 0; i < chars.length; i += 1) {
+                chars[i] = (char) (0x4e00 + 7 * i);
+            }
+            return new String(chars);
+        default:
+            throw new IllegalArgumentException(kind);
+        }
+    }
+
+    /** Return a random permutation of ALPHA, drawn from RANDOM. */
+    static Permutation permutation(Alphabet alpha, Random random) {
+        return new Permutation(shuffled(alpha.size(), random), alpha);
+    }
+
+    /** Return a random fixed-point-free involution of ALPHA, drawn from
+     *  RANDOM, suitable for a reflector. */
+    static Permutation involution(Alphabet alpha, Random random) {
+        int[] order = shuffled(alpha.size(), random);
+        int[] table = new int[order.length];
+        for (int i = 0; i + 1 < order.length; i += 2) {
+            table[order[i]] = order[i + 1];
+            table[order[i + 1]] = order[i];
+        }
+        return new Permutation(table, alpha);
+    }
+
+    /** Return a random permutation of 0 .. N-1, drawn from RANDOM. */
+    private static int[] shuffled(int n, Random random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Names of the rotors made by rotors(). */
+    static final String[] NAMES = { "B", "Beta", "I", "II", "III" };
+
+    /** Return five random rotors over ALPHA: a reflector, a fixed rotor
+     *  and three moving rotors with two notches each, named by NAMES. */
+    static ArrayList<Rotor> rotors(Alphabet alpha) {
+        Random random = new Random(61);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector(NAMES[0], involution(alpha, random)));
+        rotors.add(new FixedRotor(NAMES[1], permutation(alpha, random)));
+        for (int i = 2; i < NAMES.length; i += 1) {
+            String notches = "" + alpha.toChar(random.nextInt(alpha.size()));
+            char second;
+            do {
+                second = alpha.toChar(random.nextInt(alpha.size()));
+            } while (notches.indexOf(second) >= 0);
+            rotors.add(new MovingRotor(NAMES[i], permutation(alpha, random),
+                                       notches + second));
+        }
+        return rotors;
+    }
+
+    /** Return the settings string that puts every rotor of a machine over
+     *  ALPHA at its first position. */
+    static String settings(Alphabet alpha) {
+        return ("" + alpha.toChar(0)).repeat(NAMES.length - 1);
+    }
+
+    /** Return a 5-slot, 3-pawl machine over ALPHA with the rotors from
+     *  rotors(ALPHA) inserted and set, and ten plugboard pairs. */
+    static Machine machine(Alphabet alpha) {
+        Machine m = new Machine(alpha, NAMES.length, 3, rotors(alpha));
+        m.insertRotors(NAMES);
+        m.setRotors(settings(alpha));
+        m.setPlugboard(new Permutation(plugboard(alpha), alpha));
+        return m;
+    }
+
+    /** Return the cycles of a plugboard swapping ten pairs of ALPHA. */
+    static String plugboard(Alphabet alpha) {
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < 20; i += 2) {
+            cycles.append('(').append(alpha.toChar(i))
+                .append(alpha.toChar(i + 1)).append(") ");
+        }
+        return cycles.toString();
+    }
+
+    /** Return a random message of LENGTH characters of ALPHA. */
+    static String message(Alphabet alpha, int length) {
+        Random random = new Random(length);
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(result);
+    }
+
+    /** Return PERM written in cycle notation. */
+    static String cycles(Permutation perm) {
+        Alphabet alpha = perm.alphabet();
+        boolean[] seen = new boolean[perm.size()];
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < seen.length; i += 1) {
+            if (!seen[i]) {
+                result.append('(');
+                for (int j = i; !seen[j]; j = perm.permute(j)) {
+                    seen[j] = true;
+                    result.append(alpha.toChar(j));
+                }
+                result.append(") ");
+            }
+        }
+        return result.toString();
+    }
+
+    /** Write a text configuration for the rotors of rotors(ALPHA) to
+     *  FILE. */
+    static void writeConfig(Alphabet alpha, Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append(alpha.size() == 26 ? alphabetChars("upper")
+                    : alphabetChars("large"));
+        text.append("\n").append(NAMES.length).append(" 3\n");
+        for (Rotor rotor : rotors(alpha)) {
+            text.append(rotor.name()).append(' ')
+                .append(rotor.reflecting() ? "R"
+                        : rotor.rotates() ? "M" + rotor.notches() : "N")
+                .append(' ').append(cycles(rotor.permutation()))
+                .append('\n');
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write an input file of SECTIONS sections, each with LINES message
+     *  lines of 50 characters of ALPHA, to FILE. */
+    static void writeInput(Alphabet alpha, Path file, int sections,
+                           int lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String message = message(alpha, 50 * lines);
+        for (int s = 0; s < sections; s += 1) {
+            text.append("* ").append(String.join(" ", NAMES)).append(' ')
+                .append(settings(alpha)).append(' ')
+                .append(plugboard(alpha)).append('\n');
+            for (int i = 0; i < lines; i += 1) {
+                text.append(message, 50 * i, 50 * i + 50).append('\n');
+            }
+            text.append('\n');
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+}
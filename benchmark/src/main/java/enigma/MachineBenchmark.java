@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of whole-machine conversion: one character at a time, and
+ *  whole messages of 1KB, 1MB and 100MB through convert(String).
+ *  @author Duc Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MachineBenchmark {
+
+    /** Which alphabet to use (see Fixtures.alphabet). */
+    @Param({ "upper", "large" })
+    public String alphabet;
+
+    /** Length of the message converted by convertString. */
+    @Param({ "1000", "1000000", "100000000" })
+    public int length;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet(alphabet);
+        _machine = Fixtures.machine(alpha);
+        _message = Fixtures.message(alpha, length);
+        _size = alpha.size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int convertChar() {
+        _index = _index + 1 == _size ? 0 : _index + 1;
+        return _machine.convert(_index);
+    }
+
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** The machine under test. */
+    private Machine _machine;
+
+    /** Message converted by convertString. */
+    private String _message;
+
+    /** Size of the machine's alphabet. */
+    private int _size;
+
+    /** Last index converted by convertChar. */
+    private int _index;
+
+}
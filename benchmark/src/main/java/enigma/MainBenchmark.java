@@ -0,0 +1,81 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end cost of Main: reading a text configuration and an input
+ *  file in the style of testing/correct, converting, and writing the
+ *  output file.
+ *  @author Duc Nguyen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class MainBenchmark {
+
+    /** Which alphabet to use (see Fixtures.alphabet). */
+    @Param({ "upper", "large" })
+    public String alphabet;
+
+    /** Number of settings lines in the input. */
+    @Param({ "1", "100" })
+    public int sections;
+
+    /** Number of 50-character message lines after each settings line. */
+    @Param({ "2000" })
+    public int lines;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        Alphabet alpha = Fixtures.alphabet(alphabet);
+        _dir = Files.createTempDirectory("enigma-bench");
+        Path config = _dir.resolve("bench.conf");
+        Path input = _dir.resolve("bench.in");
+        Fixtures.writeConfig(alpha, config);
+        Fixtures.writeInput(alpha, input, sections, lines);
+        _args = new String[] {
+            config.toString(), input.toString(),
+            _dir.resolve("bench.out").toString()
+        };
+    }
+
+    /** Remove the files written by setUp and run. */
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String name : _args) {
+            Files.deleteIfExists(Path.of(name));
+        }
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark
+    public void run() {
+        new Main(_args).process();
+    }
+
+    /** Directory holding the benchmark's files. */
+    private Path _dir;
+
+    /** Arguments to Main: configuration, input and output file names. */
+    private String[] _args;
+
+}
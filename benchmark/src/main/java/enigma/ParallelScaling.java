@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/** Reports the throughput of ParallelConverter on one large message as
+ *  the number of worker threads grows from 1 to the number of cores.
+ *  Usage: java enigma.ParallelScaling [MEGACHARS]
+ *  @author Duc Nguyen
+ */
+public class ParallelScaling {
+
+    /** Number of timed repetitions per thread count. */
+    private static final int REPS = 5;
+
+    /** Run the benchmark on a message of ARGS[0] million characters
+     *  (default 64). */
+    public static void main(String... args) {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 64)
+                   * 1_000_000;
+        char[] msg = new char[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i += 1) {
+            msg[i] = (char) ('A' + random.nextInt(26));
+        }
+        char[] out = new char[size];
+        char[] expected = new char[size];
+        machine().convert(msg, 0, size, expected, 0);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%8s %12s %8s%n", "threads", "Mchars/s", "speedup");
+        double base = 0;
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelConverter converter =
+                new ParallelConverter(pool, ParallelConverter.DEFAULT_CHUNK);
+            double best = Double.MAX_VALUE;
+            for (int r = 0; r < REPS; r += 1) {
+                Machine m = machine();
+                long start = System.nanoTime();
+                converter.convert(m, msg, 0, size, out, 0);
+                best = Math.min(best, (System.nanoTime() - start) / 1e9);
+            }
+            pool.shutdown();
+            if (!Arrays.equals(out, expected)) {
+                throw new AssertionError("parallel output differs");
+            }
+            double rate = size / best / 1e6;
+            base = threads == 1 ? rate : base;
+            System.out.printf("%8d %12.1f %8.2f%n", threads, rate, rate / base);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    /** Return a machine with rotors B Beta III IV I at AXLE. */
+    static Machine machine() {
+        Alphabet alpha = new Alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)", alpha)));
+        rotors.add(new FixedRotor("Beta", new Permutation(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", alpha)));
+        rotors.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", alpha), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(
+            "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)", alpha), "J"));
+        rotors.add(new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", alpha), "Q"));
+        Machine m = new Machine(alpha, 5, 3, rotors);
+        m.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", alpha));
+        return m;
+    }
+
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of scoring a 300-letter candidate plaintext with quadgrams, in
+ *  full and incrementally after a change at two positions, as the
+ *  solver's plugboard climb does.
+ *  @author Duc Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScorerBenchmark {
+
+    /** Build the scorer and texts. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet("upper");
+        String corpus = Fixtures.message(alpha, 1 << 20);
+        _scorer = new NGramScorer(alpha, 4, CharBuffer.wrap(corpus));
+        _text = new int[300];
+        _bytes = new byte[_text.length];
+        for (int i = 0; i < _text.length; i += 1) {
+            _text[i] = alpha.toInt(corpus.charAt(i));
+            _bytes[i] = (byte) _text[i];
+        }
+        _changed = _text.clone();
+        _changed[40] = (_changed[40] + 1) % 26;
+        _changed[200] = (_changed[200] + 1) % 26;
+        _score = _scorer.score(_text, _text.length);
+    }
+
+    @Benchmark
+    public double scoreInts() {
+        return _scorer.score(_text, _text.length);
+    }
+
+    @Benchmark
+    public double scoreBytes() {
+        return _scorer.score(_bytes, _bytes.length);
+    }
+
+    @Benchmark
+    public double rescore() {
+        return _scorer.rescore(_text, _changed, _text.length, _score,
+                               POSITIONS, POSITIONS.length);
+    }
+
+    /** Positions at which _changed differs from _text. */
+    private static final int[] POSITIONS = { 40, 200 };
+
+    /** The scorer under test. */
+    private NGramScorer _scorer;
+
+    /** A text, as alphabet indices. */
+    private int[] _text;
+
+    /** The same text as bytes. */
+    private byte[] _bytes;
+
+    /** _text with two letters changed. */
+    private int[] _changed;
+
+    /** Score of _text. */
+    private double _score;
+
+}
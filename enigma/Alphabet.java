@@ -1,4 +1,7 @@
 package enigma;
+
+import java.util.Arrays;
+
 import static enigma.EnigmaException.error;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
@@ -8,25 +11,61 @@ import static enigma.EnigmaException.error;
 class Alphabet {
 
     /** the Alphabet from which we use for further purposes. */
-    private String _alphabet;
+    private final String _alphabet;
+
+    /** Largest span of character codes indexed by a dense table. */
+    private static final int DENSE_SPAN = 1 << 12;
+
+    /** Marks an empty slot in _keys (never a valid index). */
+    private static final int EMPTY = -1;
+
+    /** Smallest character code in the alphabet. */
+    private final char _min;
+
+    /** When non-null, _dense[ch - _min] is the index of CH, or EMPTY. */
+    private final int[] _dense;
+
+    /** Open-addressed character keys, used when _dense is null. */
+    private final char[] _keys;
+
+    /** _values[k] is the index of _keys[k], or EMPTY for an empty slot. */
+    private final int[] _values;
 
     /**
      * A new alphabet containing CHARS. The K-th character has index
      * K (numbering from 0). No character may be duplicated.
      */
     Alphabet(String chars) {
-        if (chars.length() == 0 || chars.equals("")
-                || chars == null || chars.matches("\\*\\(\\)\\~\\`\\[\\]")) {
+        if (chars == null || chars.length() == 0
+                || chars.matches("\\*\\(\\)\\~\\`\\[\\]")) {
             throw error("Alphabet error! Unqualified chars");
         }
+        _alphabet = chars;
+        char min = Character.MAX_VALUE, max = Character.MIN_VALUE;
+        for (int i = 0; i < chars.length(); i += 1) {
+            char ch = chars.charAt(i);
+            min = ch < min ? ch : min;
+            max = ch > max ? ch : max;
+        }
+        _min = min;
+        int span = max - min + 1;
+        if (span <= DENSE_SPAN || span <= 2 * chars.length()) {
+            _dense = new int[span];
+            Arrays.fill(_dense, EMPTY);
+            _keys = null;
+            _values = null;
+        } else {
+            _dense = null;
+            int capacity = Integer.highestOneBit(chars.length() * 2 - 1) << 1;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, EMPTY);
+        }
         for (int i = 0; i < chars.length(); i += 1) {
-            for (int j = i + 1; j < chars.length(); j += 1) {
-                if (chars.charAt(i) == chars.charAt(j)) {
-                    throw error("Duplicate characters in alphabet");
-                }
+            if (!add(chars.charAt(i), i)) {
+                throw error("Duplicate characters in alphabet");
             }
         }
-        _alphabet = chars;
     }
 
     /**
@@ -36,6 +75,50 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Record that CH has index INDEX. Returns false iff CH is already
+     *  present. */
+    private boolean add(char ch, int index) {
+        if (_dense != null) {
+            if (_dense[ch - _min] != EMPTY) {
+                return false;
+            }
+            _dense[ch - _min] = index;
+            return true;
+        }
+        int mask = _keys.length - 1;
+        for (int k = hash(ch) & mask; ; k = (k + 1) & mask) {
+            if (_values[k] == EMPTY) {
+                _keys[k] = ch;
+                _values[k] = index;
+                return true;
+            } else if (_keys[k] == ch) {
+                return false;
+            }
+        }
+    }
+
+    /** Return a well-mixed hash of CH for probing _keys. */
+    private static int hash(char ch) {
+        int h = ch * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    /** Return the index of CH, or -1 if it is not in this alphabet. */
+    int indexOf(char ch) {
+        if (_dense != null) {
+            int offset = ch - _min;
+            return offset >= 0 && offset < _dense.length
+                    ? _dense[offset] : EMPTY;
+        }
+        int mask = _keys.length - 1;
+        for (int k = hash(ch) & mask; ; k = (k + 1) & mask) {
+            int v = _values[k];
+            if (v == EMPTY || _keys[k] == ch) {
+                return v;
+            }
+        }
+    }
+
     /**
      * Returns the size of the alphabet.
      */
@@ -47,12 +130,7 @@ class Alphabet {
      * Returns true if CH is in this alphabet.
      */
     boolean contains(char ch) {
-        for (int i = 0; i < _alphabet.length(); i += 1) {
-            if (_alphabet.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) != EMPTY;
     }
 
     /**
@@ -71,12 +149,11 @@ class Alphabet {
      * the alphabet. This is the inverse of toChar().
      */
     int toInt(char ch) {
-        for (int i = 0; i < _alphabet.length(); i += 1) {
-            if (_alphabet.charAt(i) == ch) {
-                return i;
-            }
+        int index = indexOf(ch);
+        if (index == EMPTY) {
+            throw error("Character not found to be converted!");
         }
-        throw error("Character not found to be converted!");
+        return index;
     }
 
 }
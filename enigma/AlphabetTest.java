@@ -47,4 +47,25 @@ public class AlphabetTest {
         alpha.toChar(-1);
         alpha.toChar(99);
     }
+
+    @Test
+    public void largeSparseAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 3000; i += 1) {
+            chars.append((char) (0x100 + 17 * i));
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        assertEquals(3000, alpha.size());
+        for (int i = 0; i < 3000; i += 1) {
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+            assertEquals(chars.charAt(i), alpha.toChar(i));
+        }
+        assertFalse(alpha.contains('A'));
+        assertFalse(alpha.contains((char) 0x101));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void duplicateInSparseAlphabet() {
+        new Alphabet("A\u4e00\uffffA");
+    }
 }
@@ -0,0 +1,283 @@
+package enigma;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.error;
+
+/** A batch of machines that convert the same text in lockstep, each
+ *  under its own key.  The state of all the keys is held as a
+ *  structure of arrays: for each slot, a run of the keys' settings and
+ *  table rows in flat int arrays, and for each key, bit masks of its
+ *  moving rotors and of those at a notch.  Each input character is
+ *  converted for every key one slot at a time, so each pass walks a few
+ *  contiguous arrays and gathers from the shared wiring tables, rather
+ *  than chasing rotor objects machine by machine.  The output for each
+ *  key is that of its machine converting the same text.
+ *  @author Duc Nguyen
+ */
+final class BatchMachine {
+
+    /** Number of keys converted together through a whole text. */
+    static final int TILE = 128;
+
+    /** A batch converting under the keys of MACHINES, which must have the
+     *  same alphabet and number of slots, with their rotors inserted and
+     *  set and their plugboards set.  The first conversion for each key
+     *  behaves like the next convert of its machine.  The machines
+     *  themselves are not changed.  Machines built from one
+     *  configuration (or copied from one machine) share wirings, whose
+     *  tables the batch then holds once. */
+    BatchMachine(List<Machine> machines) {
+        if (machines.isEmpty()) {
+            throw error("a batch needs at least one machine");
+        }
+        Machine first = machines.get(0);
+        _alphabet = first.alphabet();
+        _size = _alphabet.size();
+        _slots = first.numRotors();
+        _keys = machines.size();
+        if (_size > Wiring.MAX_TABLE_ALPHABET) {
+            throw error("cannot batch a machine with more than %d "
+                        + "characters", Wiring.MAX_TABLE_ALPHABET);
+        }
+        if (_slots > Long.SIZE) {
+            throw error("cannot batch a machine with more than %d slots",
+                        Long.SIZE);
+        }
+        _settings = new int[_slots * _keys];
+        _rows = new int[_slots * _keys];
+        _bases = new int[_slots * _keys];
+        _notchBases = new int[_slots * _keys];
+        _rotating = new long[_keys];
+        _notched = new long[_keys];
+        _plugboard = new int[_keys * _size];
+        _unplug = new int[_keys * _size];
+        _x = new int[_keys];
+
+        IdentityHashMap<Wiring, Integer> wirings = new IdentityHashMap<>();
+        for (Machine m : machines) {
+            if (m.alphabet().size() != _size || m.numRotors() != _slots) {
+                throw error("machines in a batch must have the same "
+                            + "alphabet and slots");
+            }
+            for (int s = 0; s < _slots; s += 1) {
+                wirings.putIfAbsent(m.rotor(s).wiring(), wirings.size());
+            }
+        }
+        int square = _size * _size;
+        _forward = new int[wirings.size() * square];
+        _backward = new int[wirings.size() * square];
+        _notches = new boolean[wirings.size() * _size];
+        for (Wiring wiring : wirings.keySet()) {
+            int w = wirings.get(wiring);
+            int[][] tables = wiring.tables();
+            System.arraycopy(tables[0], 0, _forward, w * square, square);
+            System.arraycopy(tables[1], 0, _backward, w * square, square);
+            for (int p = 0; p < _size; p += 1) {
+                _notches[w * _size + p] = wiring.notchAt(p);
+            }
+        }
+
+        for (int k = 0; k < _keys; k += 1) {
+            Machine m = machines.get(k);
+            for (int s = 0; s < _slots; s += 1) {
+                Rotor rotor = m.rotor(s);
+                int w = wirings.get(rotor.wiring());
+                int offset = Math.floorMod(rotor.setting()
+                                           - rotor.ringSetting(), _size);
+                int j = s * _keys + k;
+                _settings[j] = rotor.setting();
+                _bases[j] = w * square;
+                _rows[j] = w * square + offset * _size;
+                _notchBases[j] = w * _size;
+                if (rotor.rotates()) {
+                    _rotating[k] |= 1L << s;
+                    if (rotor.atNotch()) {
+                        _notched[k] |= 1L << s;
+                    }
+                }
+            }
+            Permutation plugboard = m.plugboard();
+            for (int c = 0; c < _size; c += 1) {
+                _plugboard[k * _size + c] = plugboard.permute(c);
+                _unplug[k * _size + c] = plugboard.invert(c);
+            }
+        }
+    }
+
+    /** Return the number of keys I convert under. */
+    int keys() {
+        return _keys;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Advance every key, then set OUT[k] to the conversion of C (an
+     *  index into my alphabet) under key k. */
+    void convert(int c, int[] out) {
+        convert(c, 0, _keys, out);
+    }
+
+    /** Advance keys LO .. HI-1, then set OUT[k] to the conversion of C
+     *  under key k for each of them. */
+    private void convert(int c, int lo, int hi, int[] out) {
+        int[] x = _x;
+        for (int k = lo; k < hi; k += 1) {
+            advance(k);
+            x[k] = _plugboard[k * _size + c];
+        }
+        int[] rows = _rows;
+        for (int s = _slots - 1; s >= 0; s -= 1) {
+            int j = s * _keys;
+            for (int k = lo; k < hi; k += 1) {
+                x[k] = _forward[rows[j + k] + x[k]];
+            }
+        }
+        for (int s = 1; s < _slots; s += 1) {
+            int j = s * _keys;
+            for (int k = lo; k < hi; k += 1) {
+                x[k] = _backward[rows[j + k] + x[k]];
+            }
+        }
+        for (int k = lo; k < hi; k += 1) {
+            out[k] = _unplug[k * _size + x[k]];
+        }
+    }
+
+    /** Convert the LEN characters of IN starting at OFF under every key,
+     *  putting the result for key k into OUT[k] starting at OUTOFF.  The
+     *  keys are taken TILE at a time through the whole text, so that the
+     *  state of the keys in hand stays in cache. */
+    void convert(char[] in, int off, int len, char[][] out, int outOff) {
+        int[] converted = new int[_keys];
+        int[] text = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            text[i] = _alphabet.toInt(in[off + i]);
+        }
+        for (int lo = 0; lo < _keys; lo += TILE) {
+            int hi = Math.min(lo + TILE, _keys);
+            for (int i = 0; i < len; i += 1) {
+                convert(text[i], lo, hi, converted);
+                for (int k = lo; k < hi; k += 1) {
+                    out[k][outOff + i] = _alphabet.toChar(converted[k]);
+                }
+            }
+        }
+    }
+
+    /** Return the conversions of MSG under each of my keys, in key
+     *  order. */
+    String[] convert(String msg) {
+        char[] in = msg.toCharArray();
+        char[][] out = new char[_keys][in.length];
+        convert(in, 0, in.length, out, 0);
+        String[] result = new String[_keys];
+        for (int k = 0; k < _keys; k += 1) {
+            result[k] = new String(out[k]);
+        }
+        return result;
+    }
+
+    /** Advance the rotors of key K by one keystroke, including
+     *  double-stepping, as Machine.advance does: a moving rotor moves
+     *  with its right neighbour when that neighbour is at a notch, and
+     *  the rightmost rotor moves unless such a pair has just moved it.
+     *  Usually no rotor is at a notch, and only the rightmost moves. */
+    private void advance(int k) {
+        int last = _slots - 1;
+        long pairs = _rotating[k] & (_notched[k] >>> 1);
+        if (pairs == 0) {
+            step(last, k);
+            return;
+        }
+        boolean lastRotor = true;
+        for (int i = 0; i < last; i += 1) {
+            if ((pairs & (1L << i)) != 0) {
+                step(i, k);
+                step(i + 1, k);
+                if (i == last - 1) {
+                    lastRotor = false;
+                }
+                i += 1;
+            }
+        }
+        if (lastRotor) {
+            step(last, k);
+        }
+    }
+
+    /** Move the rotor in slot S of key K one position, if it rotates. */
+    private void step(int s, int k) {
+        long bit = 1L << s;
+        if ((_rotating[k] & bit) == 0) {
+            return;
+        }
+        int j = s * _keys + k;
+        int setting = _settings[j] + 1;
+        int row = _rows[j] + _size;
+        if (setting == _size) {
+            setting = 0;
+        }
+        if (row == _bases[j] + _size * _size) {
+            row = _bases[j];
+        }
+        _settings[j] = setting;
+        _rows[j] = row;
+        if (_notches[_notchBases[j] + setting]) {
+            _notched[k] |= bit;
+        } else {
+            _notched[k] &= ~bit;
+        }
+    }
+
+    /** Common alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of slots of each machine. */
+    private final int _slots;
+
+    /** Number of keys. */
+    private final int _keys;
+
+    /** Forward and backward conversion tables of every wiring in use,
+     *  one after another, each as returned by Wiring.tables. */
+    private final int[] _forward, _backward;
+
+    /** _notches[w * size + p] is true iff the wiring with tables at
+     *  w * size * size has a notch at position p. */
+    private final boolean[] _notches;
+
+    /** _settings[s * keys + k] is the setting of the rotor in slot s of
+     *  key k. */
+    private final int[] _settings;
+
+    /** _rows[s * keys + k] is the start of the row of _forward and
+     *  _backward for the current offset of the rotor in slot s of key k,
+     *  so that each slot's rows for all keys are contiguous. */
+    private final int[] _rows;
+
+    /** _bases[s * keys + k] is the start of the tables of the rotor in
+     *  slot s of key k, and _notchBases[s * keys + k] the start of its
+     *  notches. */
+    private final int[] _bases, _notchBases;
+
+    /** Bit s of _rotating[k] is set iff the rotor in slot s of key k
+     *  moves, and bit s of _notched[k] iff it moves and is at a
+     *  notch. */
+    private final long[] _rotating, _notched;
+
+    /** _plugboard[k * size + c] and _unplug[k * size + c] are the images
+     *  of c under the plugboard of key k and its inverse. */
+    private final int[] _plugboard, _unplug;
+
+    /** Characters in flight through the slots, one for each key. */
+    private final int[] _x;
+
+}
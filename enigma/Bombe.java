@@ -0,0 +1,358 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.error;
+
+/** A Turing-Welchman Bombe.  Given a ciphertext and a crib (plaintext
+ *  known to lie at a given offset in it), it tries every rotor order and
+ *  start position (and, optionally, every ring setting of the rightmost
+ *  rotor) that a configuration allows, and reports the stops: the
+ *  settings at which some plugboard is consistent with the crib.
+ *
+ *  The crib and ciphertext form a menu: a graph on the alphabet with an
+ *  edge between the plain and cipher letters at each crib position.  At
+ *  each candidate setting, the Bombe assumes a partner for the most
+ *  connected menu letter and follows the consequences along the menu
+ *  edges (through the scrambler at each position) and the diagonal board
+ *  (X steckered to Y implies Y steckered to X).  A hypothesis survives
+ *  only if it never gives a letter two partners.  Unlike the original
+ *  machine, stepping (including turnovers inside the crib) is simulated
+ *  exactly.
+ *
+ *  The search space is split across a work-stealing ForkJoinPool.  Each
+ *  stop is printed as a settings line that Main accepts; letters off the
+ *  menu are left unsteckered.
+ *
+ *  Usage: java enigma.Bombe [-r] CONFIG CIPHERTEXT CRIB [OFFSET]
+ *  where -r also tries every ring setting of the rightmost rotor.
+ *  @author Duc Nguyen
+ */
+public final class Bombe {
+
+    /** Number of settings tested by one task before it stops splitting. */
+    static final int LEAF_SIZE = 1 << 10;
+
+    /** Run the Bombe as described by ARGS (see the class comment) and
+     *  print its stops on the standard output. */
+    public static void main(String... args) {
+        try {
+            int first = args.length > 0 && args[0].equals("-r") ? 1 : 0;
+            int count = args.length - first;
+            if (count < 3 || count > 4) {
+                throw error("Usage: java enigma.Bombe [-r] CONFIG "
+                            + "CIPHERTEXT CRIB [OFFSET]");
+            }
+            Machine machine = ConfigImage.loadFor(args[first]);
+            if (machine == null) {
+                machine = Main.readConfig(args[first]);
+            }
+            int offset;
+            try {
+                offset = count == 4 ? Integer.parseInt(args[first + 3]) : 0;
+            } catch (NumberFormatException excp) {
+                throw error("offset is not an integer: %s", args[first + 3]);
+            }
+            Bombe bombe = new Bombe(machine, args[first + 1],
+                                    args[first + 2], offset, first == 1);
+            for (Key stop : bombe.search(ForkJoinPool.commonPool())) {
+                System.out.println(stop);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A Bombe searching the rotors and slots of MACHINE for settings
+     *  that encrypt CRIB to the characters of CIPHERTEXT starting at
+     *  OFFSET (blanks in either are ignored).  It tries the ring settings
+     *  of the rightmost rotor iff RINGS, and assumes ring settings of 0
+     *  otherwise. */
+    Bombe(Machine machine, String ciphertext, String crib, int offset,
+          boolean rings) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        int[] cipher = indices(ciphertext);
+        _crib = indices(crib);
+        if (_crib.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + _crib.length > cipher.length) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        _offset = offset;
+        _cipher = new int[_crib.length];
+        System.arraycopy(cipher, offset, _cipher, 0, _crib.length);
+        buildMenu();
+        _orders = machine.rotorOrders();
+        _rings = rings ? _size : 1;
+        _positions = (long) Math.pow(_size, machine.numRotors() - 1);
+        if (_positions * _orders.size() * _rings > Long.MAX_VALUE / 2) {
+            throw error("search space too large");
+        }
+    }
+
+    /** Return the alphabet indices of the non-blank characters of
+     *  TEXT. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!Lexer.isBlank(c)) {
+                if (!_alphabet.contains(c)) {
+                    throw error("'%c' is not in the alphabet", c);
+                }
+                result[n] = _alphabet.toInt(c);
+                n += 1;
+            }
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** Fill in _links and _centre from _crib and _cipher. */
+    private void buildMenu() {
+        int[] degree = new int[_size];
+        for (int i = 0; i < _crib.length; i += 1) {
+            if (_crib[i] == _cipher[i]) {
+                throw error("crib letter %d would encrypt to itself", i);
+            }
+            degree[_crib[i]] += 1;
+            degree[_cipher[i]] += 1;
+        }
+        _links = new int[_size][];
+        _centre = 0;
+        for (int u = 0; u < _size; u += 1) {
+            _links[u] = new int[2 * degree[u]];
+            if (degree[u] > degree[_centre]) {
+                _centre = u;
+            }
+        }
+        int[] filled = new int[_size];
+        for (int i = 0; i < _crib.length; i += 1) {
+            link(_crib[i], _cipher[i], i, filled);
+            link(_cipher[i], _crib[i], i, filled);
+        }
+    }
+
+    /** Record a menu edge from letter U to letter W at crib position I,
+     *  where FILLED[U] entries of _links[U] are already in use. */
+    private void link(int u, int w, int i, int[] filled) {
+        _links[u][filled[u]] = w;
+        _links[u][filled[u] + 1] = i;
+        filled[u] += 2;
+    }
+
+    /** Return the number of settings I will test. */
+    long searchSize() {
+        return _orders.size() * _rings * _positions;
+    }
+
+    /** Return all my stops, each as a key with score 0, ordered by
+     *  settings line, testing settings in parallel on POOL. */
+    List<Key> search(ForkJoinPool pool) {
+        ConcurrentLinkedQueue<Key> found = new ConcurrentLinkedQueue<>();
+        pool.invoke(new Task(0, searchSize(), found));
+        ArrayList<Key> result = new ArrayList<>(found);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** A share of the search: the settings with numbers in [_lo, _hi). */
+    private class Task extends RecursiveAction {
+
+        /** Test settings LO .. HI-1, adding stops to FOUND. */
+        Task(long lo, long hi, ConcurrentLinkedQueue<Key> found) {
+            _lo = lo;
+            _hi = hi;
+            _found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= LEAF_SIZE) {
+                new Tester().test(_lo, _hi, _found);
+            } else {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new Task(_lo, mid, _found),
+                          new Task(mid, _hi, _found));
+            }
+        }
+
+        /** Bounds of my settings. */
+        private final long _lo, _hi;
+
+        /** Destination of my stops. */
+        private final ConcurrentLinkedQueue<Key> _found;
+    }
+
+    /** The state of one thread testing settings: a private machine and
+     *  the buffers used for each setting. */
+    private class Tester {
+
+        /** A tester with its own machine. */
+        Tester() {
+            _m = _machine.copy();
+            _m.setPlugboard(new Permutation("", _alphabet));
+            _scrambler = new int[_crib.length][_size];
+            _partner = new int[_size];
+            _queue = new int[_size];
+            _settings = new int[_machine.numRotors() - 1];
+        }
+
+        /** Test the settings numbered LO .. HI-1, adding stops to
+         *  FOUND.  Setting number k selects position k % _positions,
+         *  ring setting k / _positions % _rings, and rotor order
+         *  k / _positions / _rings. */
+        void test(long lo, long hi, ConcurrentLinkedQueue<Key> found) {
+            int order = -1, ring = -1;
+            for (long k = lo; k < hi; k += 1) {
+                long rest = k / _positions;
+                if (order != rest / _rings || ring != rest % _rings) {
+                    order = (int) (rest / _rings);
+                    ring = (int) (rest % _rings);
+                    _m.insertRotors(_orders.get(order));
+                    _ringSettings = ringSetting(ring);
+                    _m.setRings(_ringSettings);
+                }
+                long position = k % _positions;
+                for (int i = _settings.length - 1; i >= 0; i -= 1) {
+                    _settings[i] = (int) (position % _size);
+                    position /= _size;
+                }
+                _m.setRotors(_settings);
+                _m.seek(_offset);
+                for (int i = 0; i < _crib.length; i += 1) {
+                    _m.advance();
+                    int[] row = _scrambler[i];
+                    for (int c = 0; c < _size; c += 1) {
+                        row[c] = _m.substitute(c);
+                    }
+                }
+                for (int x = 0; x < _size; x += 1) {
+                    if (consistent(x)) {
+                        found.add(Key.of(_alphabet, _orders.get(order),
+                                         _settings, _ringSettings,
+                                         _partner, 0));
+                    }
+                }
+            }
+        }
+
+        /** Return true iff assuming that _centre is steckered to X leads
+         *  to no contradiction, leaving the deduced partners in
+         *  _partner (-1 for letters with none). */
+        private boolean consistent(int x) {
+            Arrays.fill(_partner, -1);
+            _length = 0;
+            if (!pair(_centre, x)) {
+                return false;
+            }
+            for (int q = 0; q < _length; q += 1) {
+                int u = _queue[q];
+                int v = _partner[u];
+                int[] links = _links[u];
+                for (int k = 0; k < links.length; k += 2) {
+                    if (!pair(links[k], _scrambler[links[k + 1]][v])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that A and B are steckered to each other, queueing
+         *  them if that is new.  Return false iff either already has
+         *  another partner. */
+        private boolean pair(int a, int b) {
+            if (_partner[a] == b) {
+                return true;
+            } else if (_partner[a] != -1 || _partner[b] != -1) {
+                return false;
+            }
+            _partner[a] = b;
+            _partner[b] = a;
+            _queue[_length] = a;
+            _length += 1;
+            if (a != b) {
+                _queue[_length] = b;
+                _length += 1;
+            }
+            return true;
+        }
+
+        /** My machine, with no plugboard. */
+        private final Machine _m;
+
+        /** _scrambler[i][c] is the conversion of C at crib position I,
+         *  without plugboard, at the setting being tested. */
+        private final int[][] _scrambler;
+
+        /** Partner of each letter deduced so far, or -1. */
+        private final int[] _partner;
+
+        /** Letters whose partners are known but not yet followed along
+         *  the menu are _queue[q .. _length). */
+        private final int[] _queue;
+
+        /** Number of letters queued. */
+        private int _length;
+
+        /** Rotor positions being tested. */
+        private final int[] _settings;
+
+        /** Ring settings being tested. */
+        private int[] _ringSettings;
+    }
+
+    /** Return the ring settings for ring setting RING of the rightmost
+     *  rotor (and 0 for the others). */
+    private int[] ringSetting(int ring) {
+        int[] result = new int[_machine.numRotors() - 1];
+        result[result.length - 1] = ring;
+        return result;
+    }
+
+    /** Machine whose rotors and slots are searched. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Crib, and the ciphertext aligned with it, as alphabet indices. */
+    private final int[] _crib, _cipher;
+
+    /** Position in the ciphertext of the first crib letter. */
+    private final int _offset;
+
+    /** _links[u] lists the menu edges at letter u as pairs: the letter
+     *  at the other end, and the crib position of the edge. */
+    private int[][] _links;
+
+    /** Menu letter with the most edges, whose partner is hypothesized. */
+    private int _centre;
+
+    /** Every rotor order to try. */
+    private final List<String[]> _orders;
+
+    /** Number of ring settings to try. */
+    private final int _rings;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+}
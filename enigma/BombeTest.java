@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Duc Nguyen
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 3-slot, 2-pawl machine with reflector B and rotors I, II
+     *  and III, with no rotors inserted. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        String[][] moving = { { "I", "Q" }, { "II", "E" }, { "III", "V" } };
+        for (String[] rotor : moving) {
+            all.add(new MovingRotor(rotor[0],
+                                    new Permutation(NAVALA.get(rotor[0]),
+                                                    UPPER),
+                                    rotor[1]));
+        }
+        return new Machine(UPPER, 3, 2, all);
+    }
+
+    /** Rotor order used to encrypt. */
+    private static final String[] ORDER = { "B", "III", "I" };
+
+    /** Plugboard used to encrypt. */
+    private static final String PLUGBOARD = "(AK) (BZ) (EQ) (GY) (MO)";
+
+    /** Return the encryption of MSG at setting SETTING. */
+    private String encrypt(String msg, String setting) {
+        Machine m = smallMachine();
+        m.insertRotors(ORDER);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        return m.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void findsTrueSetting() {
+        String plain = "XXWETTERVORHERSAGEBISKAYA";
+        String cipher = encrypt(plain, "KV");
+        Bombe bombe = new Bombe(smallMachine(), cipher,
+                                plain.substring(2, 20), 2, false);
+        assertEquals(6 * 26 * 26, bombe.searchSize());
+        List<Key> stops = bombe.search(ForkJoinPool.commonPool());
+        Permutation plugboard = new Permutation(PLUGBOARD, UPPER);
+        boolean found = false;
+        for (Key stop : stops) {
+            if (Arrays.equals(ORDER, stop.rotors())
+                && stop.settings().equals("KV")) {
+                Permutation deduced =
+                    new Permutation(stop.plugboard(), UPPER);
+                for (int c = 0; c < 26; c += 1) {
+                    if (deduced.permute(c) != c) {
+                        assertEquals(plugboard.permute(c),
+                                     deduced.permute(c));
+                    }
+                }
+                found = true;
+            }
+        }
+        assertTrue("true setting not among " + stops.size() + " stops",
+                   found);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void cribCannotEncryptToItself() {
+        new Bombe(smallMachine(), "ABCDEFG", "XBX", 0, false);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void cribMustFit() {
+        new Bombe(smallMachine(), "ABCDEFG", "XYZ", 5, false);
+    }
+
+}
@@ -0,0 +1,484 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.error;
+
+/** A catalogue of Rejewski characteristics.  When a message key is
+ *  enciphered twice at the start of a message, the permutations A .. F
+ *  the machine performs at its first six positions give the products
+ *  AD, BE and CF, whose cycle types (the characteristic) depend only on
+ *  the rotor order and start position, not on the plugboard.  The
+ *  catalogue holds the characteristic of every rotor order and start
+ *  position a configuration allows (with ring settings of 0), indexed
+ *  by characteristic, so that the settings with a given characteristic
+ *  are found by one binary search.
+ *
+ *  Since A .. F are involutions without fixed points, the cycles of each
+ *  product come in pairs of equal length.  A characteristic is therefore
+ *  coded in one long: for each product, the halved cycle type as a
+ *  partition of half the alphabet size, written as the bit set of its
+ *  part boundaries.
+ *
+ *  A catalogue is built in parallel on a work-stealing ForkJoinPool, and
+ *  saved as a binary image that is memory-mapped when loaded.  After a
+ *  header naming the alphabet and the rotor orders, an image holds the
+ *  sorted distinct codes, the start of each code's settings in the
+ *  setting list, and the setting list, each setting numbered as by
+ *  Bombe (rotor order, then start position).
+ *
+ *  Usage: java enigma.Catalogue CONFIG CATALOGUE
+ *  builds the catalogue for the configuration CONFIG in the file
+ *  CATALOGUE.  java enigma.Catalogue -f CATALOGUE CHARACTERISTIC prints
+ *  the settings with CHARACTERISTIC, written as the cycle lengths of AD,
+ *  BE and CF separated by slashes, each list separated by dots, as in
+ *  13.13/10.10.3.3/12.12.1.1.
+ *  @author Duc Nguyen
+ */
+public final class Catalogue {
+
+    /** First word of a binary image. */
+    static final int MAGIC = 0x454e4743;
+
+    /** Format version of binary images. */
+    static final int VERSION = 1;
+
+    /** Number of settings coded by one task before it stops splitting. */
+    static final int LEAF_SIZE = 1 << 10;
+
+    /** Number of products in a characteristic. */
+    static final int PRODUCTS = 3;
+
+    /** Build or search a catalogue as described by ARGS (see the class
+     *  comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length == 3 && args[0].equals("-f")) {
+                for (Key key : load(args[1]).find(args[2])) {
+                    System.out.println(key);
+                }
+                return;
+            } else if (args.length != 2) {
+                throw error("Usage: java enigma.Catalogue CONFIG CATALOGUE"
+                            + " | -f CATALOGUE CHARACTERISTIC");
+            }
+            Machine machine = ConfigImage.loadFor(args[0]);
+            if (machine == null) {
+                machine = Main.readConfig(args[0]);
+            }
+            Catalogue catalogue = build(machine, ForkJoinPool.commonPool());
+            catalogue.save(args[1]);
+            System.out.printf("%d settings, %d characteristics%n",
+                              catalogue.size(), catalogue.characteristics());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The catalogue whose binary image is IMAGE, named NAME in error
+     *  messages. */
+    private Catalogue(ByteBuffer image, String name) {
+        _image = image;
+        if (image.limit() < 8 || image.getInt(0) != MAGIC) {
+            throw error("%s is not a catalogue", name);
+        } else if (image.getInt(4) != VERSION) {
+            throw error("%s: unsupported version", name);
+        }
+        try {
+            image.position(8);
+            char[] chars = new char[image.getInt()];
+            for (int i = 0; i < chars.length; i += 1) {
+                chars[i] = image.getChar();
+            }
+            _alphabet = new Alphabet(new String(chars));
+            int slots = image.getInt();
+            _orders = new ArrayList<>();
+            for (int k = image.getInt(); k > 0; k -= 1) {
+                String[] order = new String[slots];
+                for (int s = 0; s < slots; s += 1) {
+                    char[] letters = new char[image.getInt()];
+                    for (int i = 0; i < letters.length; i += 1) {
+                        letters[i] = image.getChar();
+                    }
+                    order[s] = new String(letters);
+                }
+                _orders.add(order);
+            }
+            _positions = (long) Math.pow(chars.length, slots - 1);
+            _codes = image.getInt();
+            _keysAt = image.position();
+            _startsAt = _keysAt + 8 * _codes;
+            _settingsAt = _startsAt + 4 * (_codes + 1);
+        } catch (RuntimeException excp) {
+            throw error("%s is damaged", name);
+        }
+        if (_settingsAt + 4L * size() != image.limit()) {
+            throw error("%s is damaged", name);
+        }
+    }
+
+    /** Return the catalogue of the rotors and slots of MACHINE, coding
+     *  settings in parallel on POOL. */
+    static Catalogue build(Machine machine, ForkJoinPool pool) {
+        Alphabet alpha = machine.alphabet();
+        int n = alpha.size();
+        if (n % 2 != 0) {
+            throw error("a catalogue needs an alphabet of even size");
+        } else if (PRODUCTS * (n / 2 - 1) > Long.SIZE - 1) {
+            throw error("alphabet too large for a catalogue");
+        }
+        List<String[]> orders = machine.rotorOrders();
+        long positions = (long) Math.pow(n, machine.numRotors() - 1);
+        if (positions * orders.size() > Integer.MAX_VALUE - 8) {
+            throw error("catalogue too large");
+        }
+        long[] codes = new long[(int) (positions * orders.size())];
+        pool.invoke(new Task(machine, orders, positions, codes, 0,
+                             codes.length));
+
+        long[] keys = codes.clone();
+        Arrays.sort(keys);
+        int distinct = 0;
+        for (int i = 0; i < keys.length; i += 1) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[distinct] = keys[i];
+                distinct += 1;
+            }
+        }
+        int[] starts = new int[distinct + 1];
+        int[] groups = new int[codes.length];
+        for (int k = 0; k < codes.length; k += 1) {
+            groups[k] = Arrays.binarySearch(keys, 0, distinct, codes[k]);
+            starts[groups[k] + 1] += 1;
+        }
+        for (int g = 0; g < distinct; g += 1) {
+            starts[g + 1] += starts[g];
+        }
+
+        long size = 4 * 4 + 2 * n + 4 * 2;
+        for (String[] order : orders) {
+            for (String name : order) {
+                size += 4 + 2 * name.length();
+            }
+        }
+        size += 8L * distinct + 4L * (distinct + 1) + 4L * codes.length;
+        if (size > Integer.MAX_VALUE) {
+            throw error("catalogue too large");
+        }
+        ByteBuffer image = ByteBuffer.allocate((int) size);
+        image.putInt(MAGIC).putInt(VERSION).putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            image.putChar(alpha.toChar(i));
+        }
+        image.putInt(machine.numRotors()).putInt(orders.size());
+        for (String[] order : orders) {
+            for (String name : order) {
+                image.putInt(name.length());
+                for (int i = 0; i < name.length(); i += 1) {
+                    image.putChar(name.charAt(i));
+                }
+            }
+        }
+        image.putInt(distinct);
+        for (int g = 0; g < distinct; g += 1) {
+            image.putLong(keys[g]);
+        }
+        for (int g = 0; g <= distinct; g += 1) {
+            image.putInt(starts[g]);
+        }
+        int settingsAt = image.position();
+        for (int k = 0; k < codes.length; k += 1) {
+            image.putInt(settingsAt + 4 * starts[groups[k]], k);
+            starts[groups[k]] += 1;
+        }
+        return new Catalogue(image, "catalogue");
+    }
+
+    /** Return the catalogue saved in the file named FILE, mapped into
+     *  memory. */
+    static Catalogue load(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file))) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw error("%s is not a catalogue", file);
+            }
+            return new Catalogue(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()), file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Write my image to the file named FILE, replacing it
+     *  atomically. */
+    void save(String file) {
+        byte[] bytes = new byte[_image.limit()];
+        _image.get(0, bytes);
+        Path target = Paths.get(file);
+        try {
+            Path temp = Files.createTempFile(
+                target.toAbsolutePath().getParent(), ".enigma", ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the number of settings I catalogue. */
+    int size() {
+        return _image.getInt(_startsAt + 4 * _codes);
+    }
+
+    /** Return the number of distinct characteristics I hold. */
+    int characteristics() {
+        return _codes;
+    }
+
+    /** Return the settings with characteristic CHARACTERISTIC (written as
+     *  in the class comment), in setting order, as keys with ring
+     *  settings of 0, no plugboard and score 0. */
+    List<Key> find(String characteristic) {
+        return find(code(characteristic, _alphabet.size()));
+    }
+
+    /** Return the settings whose characteristic has code CODE, as for
+     *  find(String). */
+    List<Key> find(long code) {
+        ArrayList<Key> result = new ArrayList<>();
+        int lo = 0, hi = _codes;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_image.getLong(_keysAt + 8 * mid) < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == _codes || _image.getLong(_keysAt + 8 * lo) != code) {
+            return result;
+        }
+        int n = _alphabet.size();
+        int slots = _orders.get(0).length;
+        int[] settings = new int[slots - 1];
+        int[] rings = new int[slots - 1];
+        int[] plugboard = new int[n];
+        for (int u = 0; u < n; u += 1) {
+            plugboard[u] = u;
+        }
+        int end = _image.getInt(_startsAt + 4 * (lo + 1));
+        for (int i = _image.getInt(_startsAt + 4 * lo); i < end; i += 1) {
+            int k = _image.getInt(_settingsAt + 4 * i);
+            long position = k % _positions;
+            for (int s = settings.length - 1; s >= 0; s -= 1) {
+                settings[s] = (int) (position % n);
+                position /= n;
+            }
+            result.add(Key.of(_alphabet, _orders.get((int) (k / _positions)),
+                              settings, rings, plugboard, 0));
+        }
+        return result;
+    }
+
+    /** Return the characteristic of MACHINE at its current settings
+     *  (ignoring its plugboard, which does not change it), written as in
+     *  the class comment.  MACHINE is not changed. */
+    static String characteristic(Machine machine) {
+        Machine m = machine.copy();
+        int n = m.alphabet().size();
+        m.setPlugboard(new Permutation("", m.alphabet()));
+        Permutation[] perms = new Permutation[2 * PRODUCTS];
+        for (int i = 0; i < perms.length; i += 1) {
+            m.advance();
+            int[] forward = new int[n];
+            for (int c = 0; c < n; c += 1) {
+                forward[c] = m.substitute(c);
+            }
+            perms[i] = new Permutation(forward, m.alphabet());
+        }
+        StringBuilder result = new StringBuilder();
+        for (int j = 0; j < PRODUCTS; j += 1) {
+            int[] type = perms[j].then(perms[j + PRODUCTS]).cycleType();
+            for (int i = 0; i < type.length; i += 1) {
+                result.append(i == 0 ? (j == 0 ? "" : "/") : ".");
+                result.append(type[i]);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the code of CHARACTERISTIC, written as in the class
+     *  comment, for an alphabet of size N. */
+    static long code(String characteristic, int n) {
+        String[] products = characteristic.trim().split("/", -1);
+        if (products.length != PRODUCTS) {
+            throw error("characteristic needs %d cycle types: %s", PRODUCTS,
+                        characteristic);
+        }
+        long result = 0;
+        for (String product : products) {
+            String[] parts = product.trim().split("\\.");
+            int[] lengths = new int[parts.length];
+            try {
+                for (int i = 0; i < parts.length; i += 1) {
+                    lengths[i] = Integer.parseInt(parts[i].trim());
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad cycle type: %s", product);
+            }
+            Arrays.sort(lengths);
+            for (int i = 0, j = lengths.length - 1; i < j; i += 1, j -= 1) {
+                int t = lengths[i];
+                lengths[i] = lengths[j];
+                lengths[j] = t;
+            }
+            result = (result << (n / 2 - 1))
+                | half(lengths, lengths.length, n);
+        }
+        return result;
+    }
+
+    /** Return the code of the cycle type LENGTHS[0 .. COUNT), longest
+     *  first, of a product of two involutions without fixed points on N
+     *  letters: the bit set of the part boundaries of the partition of
+     *  N/2 formed by every other cycle length. */
+    private static long half(int[] lengths, int count, int n) {
+        long result = 0;
+        int total = 0;
+        for (int i = 0; i < count; i += 2) {
+            if (i + 1 == count || lengths[i] != lengths[i + 1]
+                || lengths[i] <= 0) {
+                throw error("cycles are not paired; reflector must swap "
+                            + "every letter");
+            }
+            total += lengths[i];
+            if (total > n / 2) {
+                break;
+            } else if (total < n / 2) {
+                result |= 1L << (total - 1);
+            }
+        }
+        if (total != n / 2) {
+            throw error("cycle lengths do not add up to %d", n);
+        }
+        return result;
+    }
+
+    /** A share of a build: coding the settings numbered [_lo, _hi). */
+    private static class Task extends RecursiveAction {
+
+        /** Code settings LO .. HI-1 of the rotor orders ORDERS of MACHINE,
+         *  each with POSITIONS start positions, into CODES. */
+        Task(Machine machine, List<String[]> orders, long positions,
+             long[] codes, int lo, int hi) {
+            _machine = machine;
+            _orders = orders;
+            _positions = positions;
+            _codes = codes;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= LEAF_SIZE) {
+                code();
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Task(_machine, _orders, _positions, _codes,
+                                   _lo, mid),
+                          new Task(_machine, _orders, _positions, _codes,
+                                   mid, _hi));
+            }
+        }
+
+        /** Fill in _codes[_lo .. _hi) on a private machine. */
+        private void code() {
+            Machine m = _machine.copy();
+            int n = m.alphabet().size();
+            m.setPlugboard(new Permutation("", m.alphabet()));
+            int[][] rows = new int[2 * PRODUCTS][n];
+            int[] product = new int[n];
+            int[] lengths = new int[n];
+            boolean[] seen = new boolean[n];
+            int[] settings = new int[m.numRotors() - 1];
+            int order = -1;
+            for (int k = _lo; k < _hi; k += 1) {
+                if (order != k / _positions) {
+                    order = (int) (k / _positions);
+                    m.insertRotors(_orders.get(order));
+                    m.setRings(new int[settings.length]);
+                }
+                long position = k % _positions;
+                for (int s = settings.length - 1; s >= 0; s -= 1) {
+                    settings[s] = (int) (position % n);
+                    position /= n;
+                }
+                m.setRotors(settings);
+                for (int[] row : rows) {
+                    m.advance();
+                    for (int c = 0; c < n; c += 1) {
+                        row[c] = m.substitute(c);
+                    }
+                }
+                long code = 0;
+                for (int j = 0; j < PRODUCTS; j += 1) {
+                    Permutation.compose(rows[j], rows[j + PRODUCTS],
+                                        product);
+                    int count = Permutation.cycleType(product, lengths,
+                                                      seen);
+                    code = (code << (n / 2 - 1)) | half(lengths, count, n);
+                }
+                _codes[k] = code;
+            }
+        }
+
+        /** Machine whose settings are coded. */
+        private final Machine _machine;
+
+        /** Rotor orders of _machine. */
+        private final List<String[]> _orders;
+
+        /** Number of start positions of each rotor order. */
+        private final long _positions;
+
+        /** Destination of the codes. */
+        private final long[] _codes;
+
+        /** Bounds of my settings. */
+        private final int _lo, _hi;
+    }
+
+    /** My binary image. */
+    private final ByteBuffer _image;
+
+    /** Alphabet of my machine. */
+    private final Alphabet _alphabet;
+
+    /** Rotor orders I catalogue, reflector first. */
+    private final List<String[]> _orders;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+    /** Number of distinct codes in _image. */
+    private final int _codes;
+
+    /** Offsets in _image of the sorted codes, the start of each code's
+     *  settings, and the setting list. */
+    private final int _keysAt, _startsAt, _settingsAt;
+
+}
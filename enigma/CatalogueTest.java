@@ -0,0 +1,173 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Catalogue class.
+ *  @author Duc Nguyen
+ */
+public class CatalogueTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 3-slot, 2-pawl machine with reflector B and rotors I, II
+     *  and III, with no rotors inserted. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        String[][] moving = { { "I", "Q" }, { "II", "E" }, { "III", "V" } };
+        for (String[] rotor : moving) {
+            all.add(new MovingRotor(rotor[0],
+                                    new Permutation(NAVALA.get(rotor[0]),
+                                                    UPPER),
+                                    rotor[1]));
+        }
+        return new Machine(UPPER, 3, 2, all);
+    }
+
+    /** Return true iff KEYS includes rotor order ORDER at positions
+     *  SETTINGS. */
+    private boolean includes(List<Key> keys, String[] order,
+                             String settings) {
+        for (Key key : keys) {
+            if (Arrays.equals(order, key.rotors())
+                && key.settings().equals(settings)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void findsEverySetting() {
+        Machine m = smallMachine();
+        Catalogue catalogue =
+            Catalogue.build(m, ForkJoinPool.commonPool());
+        assertEquals(6 * 26 * 26, catalogue.size());
+        int total = 0;
+        for (String[] order : m.rotorOrders()) {
+            m.insertRotors(order);
+            for (String settings : new String[] { "AA", "KV", "ZD" }) {
+                m.setRotors(settings);
+                String characteristic = Catalogue.characteristic(m);
+                List<Key> found = catalogue.find(characteristic);
+                assertTrue(characteristic + " misses " + settings,
+                           includes(found, order, settings));
+                for (Key key : found) {
+                    Machine other = smallMachine();
+                    other.insertRotors(key.rotors());
+                    other.setRotors(key.settings());
+                    assertEquals(characteristic,
+                                 Catalogue.characteristic(other));
+                }
+                total += 1;
+            }
+        }
+        assertEquals(18, total);
+    }
+
+    @Test
+    public void indicatorsGiveCharacteristic() {
+        String[] order = { "B", "III", "I" };
+        Machine m = smallMachine();
+        m.insertRotors(order);
+        m.setPlugboard(new Permutation("(AK) (BZ) (EQ) (GY) (MO)", UPPER));
+        int[][] products = new int[3][26];
+        for (int x = 0; x < 26; x += 1) {
+            m.setRotors("QE");
+            String key = "" + UPPER.toChar(x) + UPPER.toChar((x + 5) % 26)
+                + UPPER.toChar((x + 11) % 26);
+            String indicator = m.convert(key + key);
+            for (int j = 0; j < 3; j += 1) {
+                products[j][UPPER.toInt(indicator.charAt(j))] =
+                    UPPER.toInt(indicator.charAt(j + 3));
+            }
+        }
+        StringBuilder characteristic = new StringBuilder();
+        for (int[] product : products) {
+            int[] type = new Permutation(product, UPPER).cycleType();
+            for (int i = 0; i < type.length; i += 1) {
+                characteristic.append(i > 0 ? "."
+                                      : characteristic.length() > 0 ? "/"
+                                      : "");
+                characteristic.append(type[i]);
+            }
+        }
+        m.setRotors("QE");
+        assertEquals(Catalogue.characteristic(m), characteristic.toString());
+        Catalogue catalogue =
+            Catalogue.build(smallMachine(), ForkJoinPool.commonPool());
+        assertTrue(includes(catalogue.find(characteristic.toString()),
+                            order, "QE"));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        Catalogue built =
+            Catalogue.build(smallMachine(), ForkJoinPool.commonPool());
+        Path file = Files.createTempFile("enigma", ".cat");
+        try {
+            built.save(file.toString());
+            Catalogue loaded = Catalogue.load(file.toString());
+            assertEquals(built.size(), loaded.size());
+            assertEquals(built.characteristics(), loaded.characteristics());
+            Machine m = smallMachine();
+            m.insertRotors(new String[] { "B", "II", "III" });
+            m.setRotors("XY");
+            String characteristic = Catalogue.characteristic(m);
+            assertEquals(built.find(characteristic).toString(),
+                         loaded.find(characteristic).toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void loadRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("enigma", ".cat");
+        try {
+            Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+            Catalogue.load(file.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void characteristicsAreChecked() {
+        assertEquals(0, Catalogue.code("13.13/13.13/13.13", 26));
+        assertEquals(Catalogue.code("10.10.3.3/13.13/1.12.1.12", 26),
+                     Catalogue.code("3.10.3.10/13.13/12.12.1.1", 26));
+        assertTrue(Catalogue.code("10.10.3.3/13.13/13.13", 26)
+                   != Catalogue.code("13.13/10.10.3.3/13.13", 26));
+        String[] bad = { "13.13/13.13", "13.12.1/13.13/13.13",
+                         "13.13/12.12/13.13", "13.13/x/13.13" };
+        for (String characteristic : bad) {
+            try {
+                Catalogue.code(characteristic, 26);
+                fail("accepted " + characteristic);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.error;
+
+/** A source of characters decoded from a byte channel through one fixed
+ *  direct buffer, so that memory use does not depend on the size of the
+ *  input.
+ *  @author Duc Nguyen
+ */
+class ChannelReader implements Readable, Closeable {
+
+    /** Size in bytes of the channel buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A reader decoding the bytes of CHANNEL with CHARSET. */
+    ChannelReader(ReadableByteChannel channel, Charset charset) {
+        _channel = channel;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _bytes.flip();
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _chars.flip();
+    }
+
+    /** Return a reader for the file named NAME in the default charset. */
+    static ChannelReader open(String name) {
+        try {
+            return new ChannelReader(FileChannel.open(Paths.get(name)),
+                                     Charset.defaultCharset());
+        } catch (IOException | RuntimeException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a reader for STREAM in the default charset. */
+    static ChannelReader of(InputStream stream) {
+        return new ChannelReader(Channels.newChannel(stream),
+                                 Charset.defaultCharset());
+    }
+
+    @Override
+    public int read(CharBuffer target) throws IOException {
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int n = Math.min(target.remaining(), _chars.remaining());
+        int limit = _chars.limit();
+        _chars.limit(_chars.position() + n);
+        target.put(_chars);
+        _chars.limit(limit);
+        return n;
+    }
+
+    /** Decode the next block of characters into _chars.  Returns false iff
+     *  the input is exhausted. */
+    private boolean fill() throws IOException {
+        _chars.clear();
+        while (_chars.position() == 0 && !_done) {
+            _decoder.decode(_bytes, _chars, _eof);
+            if (_eof) {
+                _decoder.flush(_chars);
+                _done = true;
+            } else if (_chars.position() == 0) {
+                _bytes.compact();
+                _eof = _channel.read(_bytes) < 0;
+                _bytes.flip();
+            }
+        }
+        _chars.flip();
+        return _chars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Source of bytes. */
+    private final ReadableByteChannel _channel;
+
+    /** Converts _bytes to _chars. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes read from _channel and not yet decoded. */
+    private final ByteBuffer _bytes;
+
+    /** Decoded characters not yet delivered. */
+    private final CharBuffer _chars;
+
+    /** True once _channel has reported end of input. */
+    private boolean _eof;
+
+    /** True once every byte has been decoded. */
+    private boolean _done;
+
+}
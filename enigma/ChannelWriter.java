@@ -0,0 +1,157 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.error;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** A sink of characters that are encoded into one fixed direct buffer and
+ *  handed to a byte channel with a single write whenever it fills.
+ *  @author Duc Nguyen
+ */
+class ChannelWriter implements Closeable, Flushable {
+
+    /** Size in bytes of the channel buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A writer encoding characters onto CHANNEL with CHARSET. */
+    ChannelWriter(WritableByteChannel channel, Charset charset) {
+        _channel = channel;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /** Return a writer that replaces the file named NAME, in the default
+     *  charset. */
+    static ChannelWriter open(String name) {
+        try {
+            return new ChannelWriter(
+                FileChannel.open(Paths.get(name),
+                                 WRITE, CREATE, TRUNCATE_EXISTING),
+                Charset.defaultCharset());
+        } catch (IOException | RuntimeException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a writer onto STREAM in the default charset. */
+    static ChannelWriter of(OutputStream stream) {
+        return new ChannelWriter(Channels.newChannel(stream),
+                                 Charset.defaultCharset());
+    }
+
+    /** Write C. */
+    void write(char c) {
+        if (!_chars.hasRemaining()) {
+            drain(false);
+        }
+        _chars.put(c);
+    }
+
+    /** Write the LEN characters of CHARS starting at OFF. */
+    void write(char[] chars, int off, int len) {
+        while (len > 0) {
+            if (!_chars.hasRemaining()) {
+                drain(false);
+            }
+            int n = Math.min(len, _chars.remaining());
+            _chars.put(chars, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Write STR. */
+    void write(String str) {
+        for (int off = 0; off < str.length(); ) {
+            if (!_chars.hasRemaining()) {
+                drain(false);
+            }
+            int n = Math.min(str.length() - off, _chars.remaining());
+            _chars.put(str, off, off + n);
+            off += n;
+        }
+    }
+
+    /** Encode the pending characters, and write out whatever bytes that
+     *  fills.  ENDOFINPUT is true iff no more characters will follow. */
+    private void drain(boolean endOfInput) {
+        _chars.flip();
+        while (_encoder.encode(_chars, _bytes, endOfInput).isOverflow()) {
+            writeBytes();
+        }
+        if (endOfInput) {
+            while (_encoder.flush(_bytes).isOverflow()) {
+                writeBytes();
+            }
+        }
+        _chars.compact();
+    }
+
+    /** Hand all buffered bytes to the channel. */
+    private void writeBytes() {
+        _bytes.flip();
+        try {
+            while (_bytes.hasRemaining()) {
+                _channel.write(_bytes);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _bytes.clear();
+    }
+
+    @Override
+    public void flush() {
+        drain(false);
+        writeBytes();
+    }
+
+    @Override
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        drain(true);
+        writeBytes();
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close output: %s", excp.getMessage());
+        }
+    }
+
+    /** Destination of encoded bytes. */
+    private final WritableByteChannel _channel;
+
+    /** Converts _chars to _bytes. */
+    private final CharsetEncoder _encoder;
+
+    /** Characters written and not yet encoded. */
+    private final CharBuffer _chars;
+
+    /** Encoded bytes not yet written to _channel. */
+    private final ByteBuffer _bytes;
+
+    /** True once I have been closed. */
+    private boolean _closed;
+
+}
@@ -0,0 +1,198 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.error;
+
+/** A snapshot of a configured Machine compiled into one substitution row
+ *  per rotor position reachable from its current position.  Converting a
+ *  character is a single table load plus a step to the next row.
+ *
+ *  The rows follow the rotor positions in stepping order until the first
+ *  one that recurs, so the row after the last is recorded once as the
+ *  loop row.  A compiled machine is held as an image (a header and then
+ *  the rows) that may be written to a file and later used in place from
+ *  a mapping of that file, as KeystreamCache does.
+ *  @author Duc Nguyen
+ */
+class CompiledMachine {
+
+    /** Largest alphabet whose indices fit in a row of bytes. */
+    static final int MAX_ALPHABET = 256;
+
+    /** Largest number of rows I am willing to build. */
+    static final int MAX_ROWS = 1 << 20;
+
+    /** First word of an image. */
+    static final int MAGIC = 0x454e4733;
+
+    /** Format version of images. */
+    static final int VERSION = 1;
+
+    /** Size of an image header: magic, version, alphabet size, number of
+     *  rows and loop row, each an int. */
+    static final int HEADER = 5 * 4;
+
+    /** A compiled copy of MACHINE, which must have its rotors inserted
+     *  and set and its plugboard set.  The first conversion behaves like
+     *  the next MACHINE.convert.  MACHINE's state, including its stepping
+     *  counts, is left unchanged. */
+    CompiledMachine(Machine machine) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        if (_size > MAX_ALPHABET) {
+            throw error("cannot compile a machine with more than %d "
+                        + "characters", MAX_ALPHABET);
+        }
+        int[] start = machine.rotorSettings();
+        long[] counts = machine.stepCounts();
+        HashMap<String, Integer> seen = new HashMap<>();
+        ByteBuffer image = ByteBuffer.allocate(HEADER + 16 * _size);
+        image.position(HEADER);
+        int count = 0;
+        int loop;
+        int[] settings = start;
+        while (true) {
+            Integer old = seen.putIfAbsent(key(settings), count);
+            if (old != null) {
+                loop = old;
+                break;
+            }
+            if (count == MAX_ROWS) {
+                machine.restoreSettings(start);
+                machine.restoreStepCounts(counts);
+                throw error("stepping period too long to compile");
+            }
+            if (image.remaining() < _size) {
+                ByteBuffer bigger =
+                    ByteBuffer.allocate(2 * image.capacity() - HEADER);
+                image.flip();
+                image = bigger.put(image);
+            }
+            for (int c = 0; c < _size; c += 1) {
+                image.put((byte) machine.substitute(c));
+            }
+            count += 1;
+            machine.advance();
+            settings = machine.rotorSettings();
+        }
+        machine.restoreSettings(start);
+        machine.restoreStepCounts(counts);
+        image.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, _size)
+            .putInt(12, count).putInt(16, loop);
+        image.flip();
+        _image = ByteBuffer.allocate(image.limit()).put(image).flip();
+        _rows = _image.slice(HEADER, count * _size);
+        _count = count;
+        _loop = loop;
+        _row = 0;
+    }
+
+    /** A compiled machine over ALPHA whose image, as returned by image(),
+     *  is IMAGE.  IMAGE is used in place, not copied. */
+    CompiledMachine(Alphabet alpha, ByteBuffer image) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        if (image.limit() < HEADER || image.getInt(0) != MAGIC
+            || image.getInt(4) != VERSION || image.getInt(8) != _size) {
+            throw error("not a compiled machine for this alphabet");
+        }
+        _count = image.getInt(12);
+        _loop = image.getInt(16);
+        if (_count <= 0 || _count > MAX_ROWS || _loop < 0 || _loop >= _count
+            || image.limit() != HEADER + _count * _size) {
+            throw error("damaged compiled machine");
+        }
+        _image = image;
+        _rows = image.slice(HEADER, _count * _size);
+        _row = 0;
+    }
+
+    /** Return true iff MACHINE (with its rotors inserted) can surely be
+     *  compiled: its alphabet fits in bytes and its moving rotors have
+     *  at most MAX_ROWS positions between them. */
+    static boolean compilable(Machine machine) {
+        int size = machine.alphabet().size();
+        if (size > MAX_ALPHABET) {
+            return false;
+        }
+        long positions = 1;
+        for (int i = 0; i < machine.numRotors(); i += 1) {
+            if (machine.rotorRotates(i)) {
+                positions *= size;
+                if (positions > MAX_ROWS) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Return a key identifying the rotor positions SETTINGS. */
+    private static String key(int[] settings) {
+        return Arrays.toString(settings);
+    }
+
+    /** Return my image, positioned at its start: a header of HEADER
+     *  bytes and then my rows.  Its contents must not be changed. */
+    ByteBuffer image() {
+        return _image.duplicate().rewind();
+    }
+
+    /** Return the number of distinct rotor positions I hold. */
+    int rows() {
+        return _count;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  to the next rotor position. */
+    int convert(int c) {
+        _row = _row + 1 == _count ? _loop : _row + 1;
+        return _rows.get(_row * _size + c) & 0xFF;
+    }
+
+    /** Returns the encoding/decoding of MSG, advancing my position
+     *  accordingly. */
+    String convert(String msg) {
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF, advancing my position accordingly.  IN and OUT may be
+     *  the same array. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] =
+                alpha.toChar(convert(alpha.toInt(in[off + i])));
+        }
+    }
+
+    /** Common alphabet of the compiled machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** My image: a header and then _rows. */
+    private final ByteBuffer _image;
+
+    /** Row R holds the substitution for each character at position R,
+     *  with the unconverted starting position as row 0. */
+    private final ByteBuffer _rows;
+
+    /** Number of rows. */
+    private final int _count;
+
+    /** The row for the position following the last row. */
+    private final int _loop;
+
+    /** My current row. */
+    private int _row;
+
+}
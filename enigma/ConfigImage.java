@@ -0,0 +1,202 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.error;
+
+/** Precompiled binary images of machine configurations.  An image holds a
+ *  validated configuration (alphabet, slot and pawl counts, and each
+ *  rotor's name, kind, notches and wiring table) together with the size
+ *  and modification time of the text file it came from.  Loading an image
+ *  memory-maps it and involves no parsing or cycle validation; a rotor's
+ *  wiring table is read from the mapping only when the rotor is
+ *  inserted.
+ *
+ *  Usage: java enigma.ConfigImage CONFIG [IMAGE]
+ *  compiles the text configuration CONFIG into IMAGE, which defaults to
+ *  CONFIG.bin, where Main looks for it.
+ *  @author Duc Nguyen
+ */
+public final class ConfigImage {
+
+    /** First word of every image. */
+    static final int MAGIC = 0x454e4731;
+
+    /** Format version, bumped on every incompatible change. */
+    static final int VERSION = 1;
+
+    /** Suffix added to a configuration file's name to name its image. */
+    static final String SUFFIX = ".bin";
+
+    /** Compile the configuration named ARGS[0] into the image named
+     *  ARGS[1], or ARGS[0] + SUFFIX. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Only 1 or 2 command-line arguments allowed");
+            }
+            String image = args.length > 1 ? args[1] : args[0] + SUFFIX;
+            write(Main.readConfig(args[0]), Paths.get(args[0]),
+                  Paths.get(image));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write an image of the configuration of MACHINE, read from the text
+     *  file SOURCE, to TARGET.  The image is written to a temporary file
+     *  and moved into place, so readers never see a partial image. */
+    static void write(Machine machine, Path source, Path target) {
+        Alphabet alpha = machine.alphabet();
+        List<Rotor> rotors = machine.availableRotors();
+        int size = 4 * 2 + 8 * 2 + 4 + 2 * alpha.size() + 4 * 3;
+        for (Rotor rotor : rotors) {
+            size += 1 + 4 + 2 * rotor.name().length()
+                + 4 + 2 * rotor.notches().length() + 4 * alpha.size();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        Path temp = null;
+        try {
+            buf.putInt(MAGIC).putInt(VERSION);
+            buf.putLong(Files.size(source));
+            buf.putLong(Files.getLastModifiedTime(source).toMillis());
+            putString(buf, charsOf(alpha));
+            buf.putInt(machine.numRotors()).putInt(machine.numPawls());
+            buf.putInt(rotors.size());
+            for (Rotor rotor : rotors) {
+                buf.put((byte) (rotor.reflecting() ? 'R'
+                                : rotor.rotates() ? 'M' : 'N'));
+                putString(buf, rotor.name());
+                putString(buf, rotor.notches());
+                Permutation perm = rotor.permutation();
+                for (int i = 0; i < alpha.size(); i += 1) {
+                    buf.putInt(perm.permute(i));
+                }
+            }
+            temp = Files.createTempFile(
+                target.toAbsolutePath().getParent(), ".enigma", ".tmp");
+            Files.write(temp, buf.array());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", target, excp.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore: the write has failed regardless. */
+                }
+            }
+        }
+    }
+
+    /** Return a machine loaded from the image of the configuration file
+     *  named CONFIG, or null if there is no image or it does not match
+     *  the current contents of CONFIG. */
+    static Machine loadFor(String config) {
+        Path source = Paths.get(config);
+        Path image = Paths.get(config + SUFFIX);
+        try {
+            if (!Files.isRegularFile(image)) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(image)) {
+                MappedByteBuffer buf = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                    return null;
+                }
+                if (buf.getLong() != Files.size(source)
+                    || buf.getLong()
+                       != Files.getLastModifiedTime(source).toMillis()) {
+                    return null;
+                }
+                return read(buf);
+            }
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Return the machine described by BUF, positioned just after the
+     *  image header.  Each rotor's wiring table is decoded from BUF
+     *  only when the rotor is first inserted. */
+    private static Machine read(ByteBuffer buf) {
+        Alphabet alpha = new Alphabet(getString(buf));
+        int numRotors = buf.getInt();
+        int numPawls = buf.getInt();
+        int count = buf.getInt();
+        ArrayList<Rotor> rotors = new ArrayList<>(count);
+        for (int r = 0; r < count; r += 1) {
+            char kind = (char) buf.get();
+            String name = getString(buf);
+            String notches = getString(buf);
+            int at = buf.position();
+            buf.position(at + 4 * alpha.size());
+            Wiring wiring = new Wiring(name, alpha, notches,
+                                       () -> table(buf, at, alpha));
+            switch (kind) {
+            case 'R':
+                rotors.add(new Reflector(wiring));
+                break;
+            case 'M':
+                rotors.add(new MovingRotor(wiring));
+                break;
+            default:
+                rotors.add(new FixedRotor(wiring));
+                break;
+            }
+        }
+        return new Machine(alpha, numRotors, numPawls, rotors);
+    }
+
+    /** Return the permutation of ALPHA whose wiring table is at AT in
+     *  BUF. */
+    private static Permutation table(ByteBuffer buf, int at,
+                                     Alphabet alpha) {
+        int[] table = new int[alpha.size()];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = buf.getInt(at + 4 * i);
+        }
+        return new Permutation(table, alpha);
+    }
+
+    /** Return the characters of ALPHA, in order. */
+    private static String charsOf(Alphabet alpha) {
+        char[] result = new char[alpha.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toChar(i);
+        }
+        return new String(result);
+    }
+
+    /** Append STR to BUF as a length followed by its characters. */
+    private static void putString(ByteBuffer buf, String str) {
+        buf.putInt(str.length());
+        for (int i = 0; i < str.length(); i += 1) {
+            buf.putChar(str.charAt(i));
+        }
+    }
+
+    /** Return the next string in BUF, as written by putString. */
+    private static String getString(ByteBuffer buf) {
+        char[] result = new char[buf.getInt()];
+        buf.asCharBuffer().get(result);
+        buf.position(buf.position() + 2 * result.length);
+        return new String(result);
+    }
+
+}
@@ -13,4 +13,19 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    /** A non-moving rotor with wiring WIRING. */
+    FixedRotor(Wiring wiring) {
+        super(wiring);
+    }
+
+    /** A copy of ORIGINAL. */
+    FixedRotor(FixedRotor original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
+
 }
@@ -0,0 +1,130 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
+
+/** Formats converted message lines into groups of characters separated by
+ *  spaces, optionally wrapping long lines.  Output is assembled in one
+ *  reusable buffer and handed to a ChannelWriter in bulk only when the
+ *  buffer fills or on flush().  A formatter without a writer instead
+ *  keeps all of its output, growing its buffer, until flush(OUT).
+ *  @author Duc Nguyen
+ */
+class GroupFormatter {
+
+    /** Size of my staging buffer. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** A formatter writing to OUT in groups of GROUPSIZE characters, with
+     *  output lines at most LINEWIDTH characters long (no limit if
+     *  LINEWIDTH is 0).  A line always holds at least one group. */
+    GroupFormatter(ChannelWriter out, int groupSize, int lineWidth) {
+        this(out, groupSize, lineWidth, BUFFER_SIZE);
+    }
+
+    /** A formatter like GroupFormatter(OUT, GROUPSIZE, LINEWIDTH) with a
+     *  buffer of CAPACITY characters, where OUT may be null.  In that
+     *  case, all output is kept until flush(OUT). */
+    GroupFormatter(ChannelWriter out, int groupSize, int lineWidth,
+                   int capacity) {
+        if (groupSize <= 0 || lineWidth < 0) {
+            throw error("bad group size or line width");
+        }
+        _out = out;
+        _group = groupSize;
+        _width = lineWidth;
+        _buffer = new char[Math.max(capacity, groupSize + 1)];
+    }
+
+    /** A formatter writing to OUT in unwrapped groups of five. */
+    GroupFormatter(ChannelWriter out) {
+        this(out, 5, 0);
+    }
+
+    /** Append the LEN characters of CHARS starting at OFF to the current
+     *  message line. */
+    void write(char[] chars, int off, int len) {
+        while (len > 0) {
+            if (_inGroup == _group) {
+                separate();
+            }
+            int n = Math.min(_group - _inGroup, len);
+            reserve(n);
+            System.arraycopy(chars, off, _buffer, _pos, n);
+            _pos += n;
+            _inGroup += n;
+            _column += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Start a new group, on a new output line if it would not fit on
+     *  this one. */
+    private void separate() {
+        reserve(1);
+        if (_width > 0 && _column + 1 + _group > _width) {
+            _buffer[_pos] = '\n';
+            _column = 0;
+        } else {
+            _buffer[_pos] = ' ';
+            _column += 1;
+        }
+        _pos += 1;
+        _inGroup = 0;
+    }
+
+    /** End the current message line. */
+    void endLine() {
+        reserve(1);
+        _buffer[_pos] = '\n';
+        _pos += 1;
+        _inGroup = _column = 0;
+    }
+
+    /** Make room for N more characters in my buffer. */
+    private void reserve(int n) {
+        if (_pos + n > _buffer.length) {
+            if (_out == null) {
+                _buffer = Arrays.copyOf(_buffer, 2 * _buffer.length + n);
+            } else {
+                _out.write(_buffer, 0, _pos);
+                _pos = 0;
+            }
+        }
+    }
+
+    /** Hand everything buffered so far to my writer. */
+    void flush() {
+        flush(_out);
+    }
+
+    /** Hand everything buffered so far to OUT. */
+    void flush(ChannelWriter out) {
+        out.write(_buffer, 0, _pos);
+        _pos = 0;
+    }
+
+    /** Destination of formatted output, or null if it is kept. */
+    private final ChannelWriter _out;
+
+    /** Number of characters per group. */
+    private final int _group;
+
+    /** Maximum output line width, or 0 for no limit. */
+    private final int _width;
+
+    /** Staging buffer; _buffer[0 .. _pos) is not yet written. */
+    private char[] _buffer;
+
+    /** Number of buffered characters. */
+    private int _pos;
+
+    /** Characters in the current group. */
+    private int _inGroup;
+
+    /** Characters on the current output line. */
+    private int _column;
+
+}
@@ -0,0 +1,57 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+
+/** The suite of all JUnit tests for the GroupFormatter class.
+ *  @author Duc Nguyen
+ */
+public class GroupFormatterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the output of formatting LINES with a formatter in groups
+     *  of GROUP with lines of at most WIDTH. Each line is written in
+     *  pieces of at most three characters. */
+    private String format(int group, int width, String... lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter out = ChannelWriter.of(bytes);
+        GroupFormatter formatter = new GroupFormatter(out, group, width);
+        for (String line : lines) {
+            char[] chars = line.toCharArray();
+            for (int i = 0; i < chars.length; i += 3) {
+                formatter.write(chars, i, Math.min(3, chars.length - i));
+            }
+            formatter.endLine();
+        }
+        formatter.flush();
+        out.close();
+        return bytes.toString();
+    }
+
+    @Test
+    public void groupsOfFive() {
+        assertEquals("ABCDE FGHIJ KL\n\nABCDE\n",
+                     format(5, 0, "ABCDEFGHIJKL", "", "ABCDE"));
+    }
+
+    @Test
+    public void wrappedLines() {
+        assertEquals("ABCD EFGH\nIJKL M\n",
+                     format(4, 10, "ABCDEFGHIJKLM"));
+    }
+
+    @Test
+    public void largeOutput() {
+        String line = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".repeat(1000);
+        String out = format(5, 0, line);
+        assertEquals(line.length() + line.length() / 5, out.length());
+        assertEquals(line, out.replace(" ", "").replace("\n", ""));
+    }
+}
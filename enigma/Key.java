@@ -0,0 +1,109 @@
+package enigma;
+
+/** A complete machine key: rotor order, rotor positions, ring settings
+ *  and plugboard, as found by a search such as Bombe or Solver, with the
+ *  score the search gave it (higher is better).  Its string form is a
+ *  settings line that Main accepts.
+ *  @author Duc Nguyen
+ */
+final class Key implements Comparable<Key> {
+
+    /** A key with rotor order ROTORS (reflector first), positions
+     *  SETTINGS and ring settings RINGS (as for Machine.setRotors and
+     *  Machine.setRings), plugboard cycles PLUGBOARD, and score SCORE. */
+    Key(String[] rotors, String settings, String rings, String plugboard,
+        double score) {
+        _rotors = rotors.clone();
+        _settings = settings;
+        _rings = rings;
+        _plugboard = plugboard;
+        _score = score;
+    }
+
+    /** Return the key with rotor order ROTORS, whose positions, ring
+     *  settings and plugboard are given as indices into ALPHA: SETTINGS
+     *  and RINGS as for Machine.rotorSettings, and PLUGBOARD as the
+     *  involution it performs.  Its score is SCORE. */
+    static Key of(Alphabet alpha, String[] rotors, int[] settings,
+                  int[] rings, int[] plugboard, double score) {
+        StringBuilder cycles = new StringBuilder();
+        for (int u = 0; u < plugboard.length; u += 1) {
+            if (plugboard[u] > u) {
+                cycles.append(cycles.length() == 0 ? "(" : " (")
+                    .append(alpha.toChar(u))
+                    .append(alpha.toChar(plugboard[u])).append(')');
+            }
+        }
+        return new Key(rotors, chars(alpha, settings), chars(alpha, rings),
+                       cycles.toString(), score);
+    }
+
+    /** Return the characters of ALPHA with indices INDICES. */
+    private static String chars(Alphabet alpha, int[] indices) {
+        char[] result = new char[indices.length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toChar(indices[i]);
+        }
+        return new String(result);
+    }
+
+    /** Return my rotor order, reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return my rotor positions, as for Machine.setRotors. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return my ring settings, as for Machine.setRings. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return my plugboard, in cycle notation. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my score. */
+    double score() {
+        return _score;
+    }
+
+    /** Set up M, which must have rotors with my names, with my rotors,
+     *  positions, ring settings and plugboard. */
+    void apply(Machine m) {
+        m.insertRotors(_rotors);
+        m.setRotors(_settings);
+        m.setRings(_rings);
+        m.setPlugboard(new Permutation(_plugboard, m.alphabet()));
+    }
+
+    /** Keys are ordered best score first, then by settings line. */
+    @Override
+    public int compareTo(Key other) {
+        int result = Double.compare(other._score, _score);
+        return result != 0 ? result : toString().compareTo(other.toString());
+    }
+
+    @Override
+    public String toString() {
+        return ("* " + String.join(" ", _rotors) + " " + _settings + " "
+                + _rings + " " + _plugboard).trim();
+    }
+
+    /** Rotor names, reflector first. */
+    private final String[] _rotors;
+
+    /** Positions and ring settings of the non-reflector rotors. */
+    private final String _settings, _rings;
+
+    /** Steckered pairs, in cycle notation. */
+    private final String _plugboard;
+
+    /** Score given by the search that found me. */
+    private final double _score;
+
+}
@@ -0,0 +1,273 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.error;
+
+/** A directory of CompiledMachine images, one per machine state, that
+ *  may be shared by any number of processes.  Each image is named by a
+ *  SHA-256 digest of everything that determines its rows (alphabet,
+ *  rotor wirings, notches and kinds, settings, rings and plugboard), so
+ *  a file, once present, never changes.  Hits map the file and use it in
+ *  place.  Misses compile the machine and publish the image by writing
+ *  it to a temporary file in the directory and renaming it atomically
+ *  over the final name, so that concurrent writers of the same entry
+ *  are harmless and readers never see a partial image.
+ *
+ *  The total size of the images is bounded: after each miss, the least
+ *  recently used images are deleted until the rest fit.  A file's
+ *  modification time serves as its time of last use, since access times
+ *  are often not kept; each hit sets it to the present.
+ *  @author Duc Nguyen
+ */
+final class KeystreamCache {
+
+    /** Suffix of image files in the cache directory. */
+    static final String SUFFIX = ".ks";
+
+    /** A cache in DIRECTORY, which is created if need be, holding at
+     *  most MAXBYTES bytes of images. */
+    KeystreamCache(Path directory, long maxBytes) {
+        if (maxBytes < 0) {
+            throw error("negative cache size");
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException excp) {
+            throw error("cannot create cache %s: %s", directory,
+                        excp.getMessage());
+        }
+        _directory = directory;
+        _maxBytes = maxBytes;
+    }
+
+    /** Return a compiled copy of MACHINE in its current state, as
+     *  CompiledMachine(MACHINE) would, taken from my directory if it is
+     *  there and added to it otherwise.  Returns null if MACHINE cannot
+     *  be compiled. */
+    CompiledMachine get(Machine machine) {
+        if (!CompiledMachine.compilable(machine)) {
+            return null;
+        }
+        Path file = _directory.resolve(key(machine) + SUFFIX);
+        CompiledMachine result = load(machine.alphabet(), file);
+        if (result != null) {
+            _hits.increment();
+            touch(file);
+            if (Metrics.ENABLED) {
+                Metrics.recordCache(true, 0);
+            }
+            return result;
+        }
+        _misses.increment();
+        result = new CompiledMachine(machine);
+        publish(file, result.image());
+        int evicted = evict(file);
+        if (Metrics.ENABLED) {
+            Metrics.recordCache(false, evicted);
+        }
+        return result;
+    }
+
+    /** Return the number of lookups found in my directory. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of lookups that had to compile. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of images I have deleted to stay in bounds. */
+    long evictions() {
+        return _evictions.sum();
+    }
+
+    /** Return the name under which the image of MACHINE's current state
+     *  is kept: the hexadecimal SHA-256 digest of a canonical encoding of
+     *  the state. */
+    static String key(Machine machine) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            Alphabet alpha = machine.alphabet();
+            int n = alpha.size();
+            out.writeInt(CompiledMachine.VERSION);
+            out.writeInt(n);
+            for (int i = 0; i < n; i += 1) {
+                out.writeChar(alpha.toChar(i));
+            }
+            out.writeInt(machine.numRotors());
+            for (int s = 0; s < machine.numRotors(); s += 1) {
+                Rotor rotor = machine.rotor(s);
+                out.writeBoolean(rotor.rotates());
+                out.writeBoolean(rotor.reflecting());
+                out.writeUTF(rotor.notches());
+                Permutation perm = rotor.wiring().permutation();
+                for (int i = 0; i < n; i += 1) {
+                    out.writeInt(perm.permute(i));
+                }
+                out.writeInt(rotor.setting());
+                out.writeInt(rotor.ringSetting());
+            }
+            Permutation plugboard = machine.plugboard();
+            for (int i = 0; i < n; i += 1) {
+                out.writeInt(plugboard.permute(i));
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        try {
+            return HexFormat.of().formatHex(MessageDigest
+                .getInstance("SHA-256").digest(bytes.toByteArray()));
+        } catch (NoSuchAlgorithmException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Return the compiled machine over ALPHA whose image is FILE, mapped
+     *  in place, or null if FILE is missing or is not a valid image. */
+    private static CompiledMachine load(Alphabet alpha, Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer image =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CompiledMachine(alpha, image);
+        } catch (IOException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Write IMAGE to a temporary file in my directory and rename it to
+     *  FILE.  A failure only means that the image is not cached. */
+    private void publish(Path file, ByteBuffer image) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(_directory, ".", ".tmp");
+            try (FileChannel channel =
+                 FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (image.hasRemaining()) {
+                    channel.write(image);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+        } catch (IOException excp) {
+            /* Ignore: the caller has its compiled machine regardless. */
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore. */
+                }
+            }
+        }
+    }
+
+    /** Mark FILE as just used. */
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file,
+                FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException excp) {
+            /* Ignore: another process may have evicted it. */
+        }
+    }
+
+    /** An image file in my directory, with its size and time of last
+     *  use. */
+    private static class Entry {
+
+        /** An entry for FILE of SIZE bytes last used at USED. */
+        Entry(Path file, long size, long used) {
+            _file = file;
+            _size = size;
+            _used = used;
+        }
+
+        /** The image file. */
+        private final Path _file;
+
+        /** Its size in bytes. */
+        private final long _size;
+
+        /** Its time of last use, in milliseconds since the epoch. */
+        private final long _used;
+    }
+
+    /** Delete the least recently used images in my directory other than
+     *  KEEP until the rest total at most _maxBytes, returning the number
+     *  deleted.  Images that other processes delete meanwhile are passed
+     *  over. */
+    private int evict(Path keep) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> files =
+             Files.newDirectoryStream(_directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    long size = Files.size(file);
+                    long used = Files.getLastModifiedTime(file).toMillis();
+                    entries.add(new Entry(file, size, used));
+                    total += size;
+                } catch (IOException excp) {
+                    /* Gone already. */
+                }
+            }
+        } catch (IOException excp) {
+            return 0;
+        }
+        if (total <= _maxBytes) {
+            return 0;
+        }
+        entries.sort(Comparator.comparingLong(e -> e._used));
+        int evicted = 0;
+        for (Entry entry : entries) {
+            if (total <= _maxBytes) {
+                break;
+            } else if (entry._file.equals(keep)) {
+                continue;
+            }
+            try {
+                if (Files.deleteIfExists(entry._file)) {
+                    evicted += 1;
+                }
+            } catch (IOException excp) {
+                continue;
+            }
+            total -= entry._size;
+        }
+        _evictions.add(evicted);
+        return evicted;
+    }
+
+    /** Directory holding the images. */
+    private final Path _directory;
+
+    /** Bound on the total size of the images. */
+    private final long _maxBytes;
+
+    /** Counts reported by hits(), misses() and evictions(). */
+    private final LongAdder _hits = new LongAdder(),
+        _misses = new LongAdder(), _evictions = new LongAdder();
+
+}
@@ -0,0 +1,165 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static enigma.MachineTest.navalMachine;
+import static enigma.MachineTest.randomMessage;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Duc Nguyen
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Rotor order used below. */
+    private static final String[] ROTORS =
+        { "B", "Beta", "III", "IV", "I" };
+
+    /** Plugboard used below. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** Size of the image of a machine with ROTORS. */
+    private static final long IMAGE =
+        CompiledMachine.HEADER + 26 * 26 * 25 * 26;
+
+    /** Return the image file for MACHINE in DIR. */
+    private Path entry(Path dir, Machine machine) {
+        return dir.resolve(KeystreamCache.key(machine)
+                           + KeystreamCache.SUFFIX);
+    }
+
+    /** Delete DIR and the files in it. */
+    private void deleteAll(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void keysIdentifyStates() {
+        Machine m = navalMachine(ROTORS, "AXLE", PLUGBOARD);
+        String key = KeystreamCache.key(m);
+        assertEquals(64, key.length());
+        assertEquals(key, KeystreamCache.key(
+                         navalMachine(ROTORS, "AXLE", PLUGBOARD)));
+        assertFalse(key.equals(KeystreamCache.key(
+                         navalMachine(ROTORS, "AXLF", PLUGBOARD))));
+        assertFalse(key.equals(KeystreamCache.key(
+                         navalMachine(ROTORS, "AXLE", "(HQ) (EX)"))));
+        m.setRings("AAAB");
+        assertFalse(key.equals(KeystreamCache.key(m)));
+    }
+
+    @Test
+    public void sharedBetweenCaches() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            String msg = randomMessage(20000);
+            String expected =
+                navalMachine(ROTORS, "AXLE", PLUGBOARD).convert(msg);
+            KeystreamCache first = new KeystreamCache(dir, 1L << 30);
+            Machine m = navalMachine(ROTORS, "AXLE", PLUGBOARD);
+            assertEquals(expected, first.get(m).convert(msg));
+            assertEquals(0, first.hits());
+            assertEquals(1, first.misses());
+            assertEquals(IMAGE, Files.size(entry(dir, m)));
+
+            KeystreamCache second = new KeystreamCache(dir, 1L << 30);
+            CompiledMachine mapped = second.get(m);
+            assertEquals(1, second.hits());
+            assertEquals(0, second.misses());
+            assertEquals(26 * 26 * 25, mapped.rows());
+            assertEquals(expected, mapped.convert(msg));
+            assertEquals(expected, first.get(m).convert(msg));
+            assertEquals(1, first.hits());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            KeystreamCache cache = new KeystreamCache(dir, 2 * IMAGE);
+            Machine a = navalMachine(ROTORS, "AAAA", PLUGBOARD),
+                b = navalMachine(ROTORS, "BBBB", PLUGBOARD),
+                c = navalMachine(ROTORS, "CCCC", PLUGBOARD);
+            cache.get(a);
+            cache.get(b);
+            assertEquals(0, cache.evictions());
+            Files.setLastModifiedTime(entry(dir, a),
+                                      FileTime.fromMillis(2000));
+            Files.setLastModifiedTime(entry(dir, b),
+                                      FileTime.fromMillis(1000));
+            cache.get(a);
+            assertTrue(Files.getLastModifiedTime(entry(dir, a)).toMillis()
+                       > 2000);
+            cache.get(c);
+            assertEquals(1, cache.evictions());
+            assertTrue(Files.exists(entry(dir, a)));
+            assertFalse(Files.exists(entry(dir, b)));
+            assertTrue(Files.exists(entry(dir, c)));
+            assertEquals(1, cache.hits());
+            assertEquals(3, cache.misses());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void keepsNewestWhenTooSmall() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            KeystreamCache cache = new KeystreamCache(dir, 0);
+            Machine m = navalMachine(ROTORS, "AXLE", PLUGBOARD);
+            String msg = randomMessage(1000);
+            String expected =
+                navalMachine(ROTORS, "AXLE", PLUGBOARD).convert(msg);
+            assertEquals(expected, cache.get(m).convert(msg));
+            assertTrue(Files.exists(entry(dir, m)));
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void replacesDamagedImages() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Machine m = navalMachine(ROTORS, "AXLE", PLUGBOARD);
+            Files.write(entry(dir, m), new byte[] { 1, 2, 3, 4, 5, 6, 7 });
+            KeystreamCache cache = new KeystreamCache(dir, 1L << 30);
+            String msg = randomMessage(1000);
+            String expected =
+                navalMachine(ROTORS, "AXLE", PLUGBOARD).convert(msg);
+            assertEquals(expected, cache.get(m).convert(msg));
+            assertEquals(1, cache.misses());
+            assertEquals(IMAGE, Files.size(entry(dir, m)));
+            assertEquals(expected, cache.get(m).convert(msg));
+            assertEquals(1, cache.hits());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+}
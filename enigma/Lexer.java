@@ -0,0 +1,289 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import static enigma.EnigmaException.error;
+
+/** A single-pass tokenizer for configuration and message files.  It reads
+ *  its source through one reusable character buffer, uses no regular
+ *  expressions, and keeps track of the line and column of each token so
+ *  that errors can say where they occurred.
+ *  @author Duc Nguyen
+ */
+class Lexer {
+
+    /** Size of my character buffer. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** A lexer reading characters from SOURCE. */
+    Lexer(Readable source) {
+        this(source, 1, 1);
+    }
+
+    /** A lexer reading characters from SOURCE, where they begin at line
+     *  LINE and column COLUMN of their source. */
+    Lexer(Readable source, int line, int column) {
+        _source = source;
+        _buffer = CharBuffer.allocate(BUFFER_SIZE);
+        _chars = _buffer.array();
+        _line = line;
+        _column = column;
+    }
+
+    /** A lexer reading the LEN characters of TEXT from the start, where
+     *  they begin at line LINE and column COLUMN of their source.  TEXT is
+     *  used in place, not copied. */
+    Lexer(char[] text, int len, int line, int column) {
+        _source = null;
+        _buffer = null;
+        _chars = text;
+        _limit = len;
+        _eof = true;
+        _line = line;
+        _column = column;
+    }
+
+    /** Return the line number of the next character. */
+    int line() {
+        return _line;
+    }
+
+    /** Return the column number of the next character. */
+    int column() {
+        return _column;
+    }
+
+    /** Return an exception reporting MSGFORMAT and ARGUMENTS (as for
+     *  String.format) at my current line and column. */
+    EnigmaException err(String msgFormat, Object... arguments) {
+        return error("line %d, column %d: %s", _line, _column,
+                     String.format(msgFormat, arguments));
+    }
+
+    /** Return the next character without consuming it, or -1 at the end
+     *  of input. */
+    int peek() {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _chars[_pos];
+    }
+
+    /** Consume and return the next character, or -1 at the end of
+     *  input. */
+    int next() {
+        int c = peek();
+        if (c != -1) {
+            _pos += 1;
+            if (c == '\n') {
+                _line += 1;
+                _column = 1;
+            } else {
+                _column += 1;
+            }
+        }
+        return c;
+    }
+
+    /** Refill my buffer.  Returns false iff the input is exhausted. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        _buffer.clear();
+        try {
+            int n;
+            do {
+                n = _source.read(_buffer);
+            } while (n == 0);
+            _eof = n < 0;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        _pos = 0;
+        _limit = _buffer.position();
+        return _limit > 0;
+    }
+
+    /** Return true iff C is a space character (other than end of line). */
+    static boolean isBlank(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\f'
+            || c != '\n' && c > 0 && Character.isWhitespace(c);
+    }
+
+    /** Skip all whitespace, including ends of lines. */
+    void skipWhitespace() {
+        for (int c = peek(); c == '\n' || isBlank(c); c = peek()) {
+            next();
+        }
+    }
+
+    /** Skip whitespace up to the end of the current line. */
+    void skipBlanks() {
+        while (isBlank(peek())) {
+            next();
+        }
+    }
+
+    /** Return true iff only whitespace remains in the input. */
+    boolean atEnd() {
+        skipWhitespace();
+        return peek() == -1;
+    }
+
+    /** Return true iff only blanks remain on the current line. */
+    boolean atEndOfLine() {
+        skipBlanks();
+        int c = peek();
+        return c == '\n' || c == -1;
+    }
+
+    /** Consume the rest of the current line, including its end. */
+    void nextLine() {
+        for (int c = next(); c != '\n' && c != -1; c = next()) {
+            continue;
+        }
+    }
+
+    /** Consume the rest of the current line, including its end, appending
+     *  it to DEST. */
+    void copyLine(StringBuilder dest) {
+        copyLine(dest, Integer.MAX_VALUE);
+    }
+
+    /** Consume the rest of the current line, including its end, appending
+     *  it to DEST, but stop after MAX characters.  Returns true iff the
+     *  line (or the input) ended. */
+    boolean copyLine(StringBuilder dest, int max) {
+        while (_pos < _limit || fill()) {
+            int start = _pos;
+            int stop = _limit - _pos <= max ? _limit : _pos + max;
+            while (_pos < stop && _chars[_pos] != '\n') {
+                _pos += 1;
+            }
+            dest.append(_chars, start, _pos - start);
+            _column += _pos - start;
+            max -= _pos - start;
+            if (_pos < stop) {
+                dest.append('\n');
+                _pos += 1;
+                _line += 1;
+                _column = 1;
+                return true;
+            }
+            if (max == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Consume the next character, which must be C, after skipping
+     *  blanks.  WHAT describes C for error messages. */
+    void expect(char c, String what) {
+        skipBlanks();
+        if (peek() != c) {
+            throw err("expected %s", what);
+        }
+        next();
+    }
+
+    /** Return the next whitespace-delimited token, skipping ends of lines
+     *  iff MULTILINE.  WHAT describes the token for error messages. */
+    String token(boolean multiline, String what) {
+        if (multiline) {
+            skipWhitespace();
+        } else {
+            skipBlanks();
+        }
+        _text.setLength(0);
+        for (int c = peek(); c != -1 && c != '\n' && !isBlank(c);
+             c = peek()) {
+            _text.append((char) next());
+        }
+        if (_text.length() == 0) {
+            throw err("missing %s", what);
+        }
+        return _text.toString();
+    }
+
+    /** Return the next token, which must be a decimal integer, skipping
+     *  ends of lines.  WHAT describes it for error messages. */
+    int integer(String what) {
+        String token = token(true, what);
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException excp) {
+            throw err("%s is not an integer: %s", what, token);
+        }
+    }
+
+    /** Return the next parenthesized cycle on the current line, such as
+     *  "(ABC)", including its parentheses. */
+    String cycle() {
+        expect('(', "'(' starting a cycle");
+        _text.setLength(0);
+        _text.append('(');
+        for (int c = peek(); c != ')'; c = peek()) {
+            if (c == -1 || c == '\n' || c == '(' || isBlank(c)) {
+                throw err("unterminated cycle");
+            }
+            _text.append((char) next());
+        }
+        next();
+        return _text.append(')').toString();
+    }
+
+    /** Copy up to LEN non-blank characters of the current line into DEST
+     *  starting at OFF, stopping before the end of the line, and return
+     *  how many were copied (0 only at the end of the line).  Every
+     *  character must be in ALPHA. */
+    int message(char[] dest, int off, int len, Alphabet alpha) {
+        int n = 0;
+        while (n < len) {
+            if (_pos == _limit && !fill()) {
+                break;
+            }
+            char c = _chars[_pos];
+            if (c == '\n') {
+                break;
+            } else if (!isBlank(c)) {
+                if (!alpha.contains(c)) {
+                    throw err("'%c' is not in the alphabet", c);
+                }
+                dest[off + n] = c;
+                n += 1;
+            }
+            _pos += 1;
+            _column += 1;
+        }
+        return n;
+    }
+
+    /** Source of my characters (null if I read a given text). */
+    private final Readable _source;
+
+    /** Buffer wrapping _chars, filled from _source (null if I read a
+     *  given text). */
+    private final CharBuffer _buffer;
+
+    /** Characters read from _source; _chars[_pos .. _limit) are unread. */
+    private final char[] _chars;
+
+    /** Position of the next unread character in _chars. */
+    private int _pos;
+
+    /** End of the valid characters in _chars. */
+    private int _limit;
+
+    /** True once _source is exhausted. */
+    private boolean _eof;
+
+    /** Line and column of the next character, numbered from 1. */
+    private int _line, _column;
+
+    /** Reusable text of the current token. */
+    private final StringBuilder _text = new StringBuilder();
+
+}
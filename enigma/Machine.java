@@ -1,6 +1,12 @@
 package enigma;
 
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import static enigma.EnigmaException.error;
 
 /** Class that represents a complete enigma machine.
@@ -10,7 +16,10 @@ class Machine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors, which must have distinct names.  They serve only
+     *  as templates: the rotors inserted into my slots are my own copies
+     *  of them, so any number of machines may be built from the same
+     *  ALLROTORS. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
         if (numRotors <= pawls || numRotors <= 0 || pawls <= 0) {
@@ -19,10 +28,44 @@ class Machine {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors.toArray();
+        _allRotors = new LinkedHashMap<>();
+        for (Rotor rotor : allRotors) {
+            if (_allRotors.put(rotor.name(), rotor) != null) {
+                throw error("Invalid construction of Machine! "
+                            + "Duplicate rotor %s", rotor.name());
+            }
+        }
         _mainRotors = new Rotor[numRotors];
     }
 
+    /** A machine in the same state as ORIGINAL whose rotors move
+     *  independently of ORIGINAL's. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        _mainRotors = new Rotor[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = original._mainRotors[i];
+            _mainRotors[i] = rotor == null ? null : rotor.copy();
+        }
+        _plugboard = original._plugboard;
+        _start = original._start;
+        _position = original._position;
+        _rotating = original._rotating;
+        _notched = original._notched;
+    }
+
+    /** Return a copy of me, with the same rotors, settings, plugboard and
+     *  position, whose rotors move independently of mine.  Only the
+     *  positions of my inserted rotors are copied; wiring, tables and
+     *  available rotors are shared, so copies are cheap and may be used
+     *  concurrently with me and with each other. */
+    Machine copy() {
+        return new Machine(this);
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -33,25 +76,112 @@ class Machine {
         return _pawls;
     }
 
+    /** Return true iff the rotor in slot SLOT (0 being the reflector's)
+     *  can move. */
+    boolean rotorRotates(int slot) {
+        return _mainRotors[slot].rotates();
+    }
+
+    /** Return the rotor in slot SLOT (0 being the reflector's). */
+    Rotor rotor(int slot) {
+        return _mainRotors[slot];
+    }
+
+    /** Return all the rotors available to me, in configuration order. */
+    List<Rotor> availableRotors() {
+        return new ArrayList<>(_allRotors.values());
+    }
+
+    /** Return every assignment of my available rotors to my slots that
+     *  insertRotors accepts as a legal Enigma: a reflector first, then
+     *  non-moving rotors, then as many moving rotors as I have pawls. */
+    List<String[]> rotorOrders() {
+        ArrayList<String> reflectors = new ArrayList<>();
+        ArrayList<String> fixed = new ArrayList<>();
+        ArrayList<String> moving = new ArrayList<>();
+        for (Rotor rotor : availableRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[_numRotors];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            arrange(order, 1, _numRotors - _pawls, fixed, result, moving);
+        }
+        return result;
+    }
+
+    /** Fill ORDER[K .. END) with distinct names from CHOICES in every
+     *  possible way, continuing each with the rest of ORDER filled from
+     *  NEXT, and add each complete ORDER to RESULT. */
+    private static void arrange(String[] order, int k, int end,
+                                List<String> choices, List<String[]> result,
+                                List<String> next) {
+        if (k == end) {
+            if (end == order.length) {
+                result.add(order.clone());
+            } else {
+                arrange(order, k, order.length, next, result, null);
+            }
+            return;
+        }
+        for (String name : choices) {
+            boolean used = false;
+            for (int i = 1; i < k; i += 1) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                arrange(order, k + 1, end, choices, result, next);
+            }
+        }
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting and 0 ring
+     *  setting. */
     void insertRotors(String[] rotors) {
         if (_mainRotors.length != rotors.length) {
             throw error("insertRotors error! Length not equal");
         }
-        for (int i = 0; i < rotors.length; i += 1) {
-            for (int j = i + 1; j < rotors.length; j += 1) {
-                if (rotors[i].equals(rotors[j])) {
-                    throw error("insertRotors error! Duplicate rotor names");
-                }
+        HashSet<String> names = new HashSet<>();
+        for (String name : rotors) {
+            if (!names.add(name)) {
+                throw error("insertRotors error! Duplicate rotor names");
             }
         }
         for (int i = 0; i < _mainRotors.length; i += 1) {
-            for (int j = 0; j < _allRotors.length; j += 1) {
-                String currRotorName = ((Rotor) _allRotors[j]).name();
-                if (rotors[i].equals(currRotorName)) {
-                    _mainRotors[i] = ((Rotor) _allRotors[j]);
+            Rotor template = _allRotors.get(rotors[i]);
+            if (template == null) {
+                throw error("insertRotors error! Unknown rotor %s",
+                            rotors[i]);
+            }
+            _mainRotors[i] = template.copy();
+            _mainRotors[i].prepare();
+            _mainRotors[i].setRing(0);
+        }
+        _start = null;
+        resetStepping();
+    }
+
+    /** Recompute _rotating and _notched from my rotors. */
+    private void resetStepping() {
+        _rotating = _notched = 0;
+        if (_numRotors > Long.SIZE) {
+            return;
+        }
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (_mainRotors[i] != null && _mainRotors[i].rotates()) {
+                _rotating |= 1L << i;
+                if (_mainRotors[i].atNotch()) {
+                    _notched |= 1L << i;
                 }
             }
         }
@@ -72,6 +202,250 @@ class Machine {
                 throw error("setRotors error! Out of Alphabet");
             }
         }
+        resetStepping();
+        _start = rotorSettings();
+        _position = 0;
+    }
+
+    /** Set my non-reflector rotors to SETTINGS, as returned by
+     *  rotorSettings(), as setRotors(String) does. */
+    void setRotors(int[] settings) {
+        restoreSettings(settings);
+        _start = rotorSettings();
+        _position = 0;
+    }
+
+    /** Return the number of characters converted since my rotors were
+     *  last set by setRotors, counting seeks. */
+    long position() {
+        return _position;
+    }
+
+    /** Put my rotors in the state they would reach after converting
+     *  OFFSET characters from the settings last given to setRotors.  The
+     *  keystrokes skipped are not counted in my stepping counts. */
+    void seek(long offset) {
+        if (offset < 0) {
+            throw error("seek error! Negative offset");
+        }
+        if (_start == null) {
+            throw error("seek error! Rotors not set");
+        }
+        long[] counts = Metrics.ENABLED ? stepCounts() : null;
+        if (offset < _position) {
+            restoreSettings(_start);
+            _position = 0;
+        }
+        skip(offset - _position);
+        if (Metrics.ENABLED) {
+            restoreStepCounts(counts);
+        }
+    }
+
+    /** Advance my rotors by COUNT keystrokes without converting anything.
+     *  A regular stack (see regularStack) is moved there directly;
+     *  otherwise skip walks the stack, see walk. */
+    private void skip(long count) {
+        if (count == 0) {
+            return;
+        }
+        int first = regularStack();
+        if (first < 0) {
+            walk(count);
+            return;
+        }
+        long target = _position + count;
+        int last = _numRotors - 1;
+        if (last - first >= 2 && _mainRotors[last - 1].atNotch()) {
+            advance();
+            count -= 1;
+        }
+        jump(first, count);
+        resetStepping();
+        _position = target;
+    }
+
+    /** Return the slot of the leftmost moving rotor if my stack is
+     *  regular: one to three moving rotors, in the rightmost slots, each
+     *  with a single notch, over an alphabet of at least two characters.
+     *  Otherwise return -1. */
+    private int regularStack() {
+        int last = _numRotors - 1;
+        int first = last + 1;
+        while (first > 0 && _mainRotors[first - 1].rotates()) {
+            first -= 1;
+        }
+        if (first > last || last - first >= 3 || _alphabet.size() < 2) {
+            return -1;
+        }
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = _mainRotors[i];
+            if (i < first ? rotor.rotates() : rotor.notches().length() != 1) {
+                return -1;
+            }
+        }
+        return first;
+    }
+
+    /** Move the regular stack of moving rotors starting in slot FIRST on
+     *  by COUNT keystrokes, its middle rotor not being at its notch if
+     *  it has a rotor to its left.  The rightmost rotor moves on every
+     *  keystroke and turns its left neighbour over every size()
+     *  keystrokes, the first time after its distance to its notch.  With
+     *  three rotors, each time these turnovers bring the middle rotor to
+     *  its notch, every size() - 1 of them, the next keystroke double
+     *  steps it and moves the leftmost rotor. */
+    private void jump(int first, long count) {
+        int last = _numRotors - 1;
+        long size = _alphabet.size();
+        Rotor right = _mainRotors[last];
+        long distance = right.distanceToNotch();
+        long turnovers =
+            count > distance ? 1 + (count - distance - 1) / size : 0;
+        right.set((int) ((right.setting() + count) % size));
+        if (first == last) {
+            return;
+        }
+        Rotor middle = _mainRotors[last - 1];
+        long doubleSteps = 0;
+        if (first < last - 1) {
+            long toNotch = middle.distanceToNotch();
+            if (turnovers >= toNotch) {
+                long arrivals = 1 + (turnovers - toNotch) / (size - 1);
+                long lastArrival = toNotch + (arrivals - 1) * (size - 1);
+                doubleSteps = arrivals;
+                if (distance + 1 + (lastArrival - 1) * size == count) {
+                    doubleSteps -= 1;
+                }
+            }
+            Rotor left = _mainRotors[last - 2];
+            left.set((int) ((left.setting() + doubleSteps) % size));
+        }
+        middle.set((int) ((middle.setting()
+                           + (turnovers + doubleSteps) % size) % size));
+    }
+
+    /** Advance my rotors by COUNT keystrokes, walking the stack.  Runs of
+     *  keystrokes that move only the rightmost rotor are taken in one
+     *  step, and once a rotor state recurs, whole stepping periods are
+     *  skipped.  States are only recorded once the walk passes a
+     *  turnover, so a short walk allocates nothing. */
+    private void walk(long count) {
+        Rotor last = _mainRotors[_numRotors - 1];
+        int size = _alphabet.size();
+        StateTable seen = null;
+        boolean watching = true;
+        long target = _position + count;
+        while (_position < target) {
+            long run = Math.min(target - _position, keystrokesToTurnover());
+            if (run > 0) {
+                if (last.rotates()) {
+                    last.set((int) ((last.setting() + run) % size));
+                    resetStepping();
+                }
+                _position += run;
+                if (_position == target) {
+                    break;
+                }
+            }
+            advance();
+            _position += 1;
+            if (!watching || _position == target) {
+                continue;
+            }
+            if (seen == null) {
+                watching = Math.pow(size, _numRotors - 1) < Long.MAX_VALUE;
+                seen = new StateTable();
+            }
+            if (watching && seen.size() < MAX_SEEK_STATES) {
+                long previous = seen.putIfAbsent(stateKey(), _position);
+                if (previous >= 0) {
+                    long period = _position - previous;
+                    _position += (target - _position) / period * period;
+                    watching = false;
+                }
+            }
+        }
+    }
+
+    /** An open-addressed map from rotor state keys (non-negative) to
+     *  positions (non-negative), without boxing. */
+    private static final class StateTable {
+
+        /** Number of entries held. */
+        int size() {
+            return _size;
+        }
+
+        /** Record POSITION for KEY unless KEY is already present, and
+         *  return its earlier position, or -1 if it was absent. */
+        long putIfAbsent(long key, long position) {
+            if (2 * (_size + 1) > _keys.length) {
+                long[] keys = _keys, positions = _positions;
+                _keys = filled(2 * keys.length);
+                _positions = new long[_keys.length];
+                _size = 0;
+                for (int i = 0; i < keys.length; i += 1) {
+                    if (keys[i] >= 0) {
+                        putIfAbsent(keys[i], positions[i]);
+                    }
+                }
+            }
+            int mask = _keys.length - 1;
+            int k = (int) (key ^ key >>> 29) * 0x9e3779b1 & mask;
+            for (; _keys[k] >= 0; k = (k + 1) & mask) {
+                if (_keys[k] == key) {
+                    return _positions[k];
+                }
+            }
+            _keys[k] = key;
+            _positions[k] = position;
+            _size += 1;
+            return -1;
+        }
+
+        /** Keys, -1 marking an empty slot. */
+        private long[] _keys = filled(64);
+
+        /** _positions[k] is the position recorded for _keys[k]. */
+        private long[] _positions = new long[64];
+
+        /** Number of entries held. */
+        private int _size;
+
+        /** Return an array of N empty keys. */
+        private static long[] filled(int n) {
+            long[] result = new long[n];
+            Arrays.fill(result, -1);
+            return result;
+        }
+    }
+
+    /** Return the number of keystrokes, starting with the next, that
+     *  will move only my rightmost rotor before one moves another rotor
+     *  (Long.MAX_VALUE if none ever will).  This is a table lookup on
+     *  the rightmost rotor's wiring. */
+    long keystrokesToTurnover() {
+        int last = _numRotors - 1;
+        for (int i = 0; i < last - 1; i += 1) {
+            if (_mainRotors[i].rotates() && _mainRotors[i + 1].atNotch()) {
+                return 0;
+            }
+        }
+        if (_mainRotors[last - 1].rotates() && _mainRotors[last].rotates()) {
+            int distance = _mainRotors[last].distanceToNotch();
+            return distance < 0 ? Long.MAX_VALUE : distance;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /** Return a number uniquely identifying my current rotor settings. */
+    private long stateKey() {
+        long result = 0;
+        for (int i = 1; i < _numRotors; i += 1) {
+            result = result * _alphabet.size() + _mainRotors[i].setting();
+        }
+        return result;
     }
 
     /** Set my ringstellungs according to SETTING, which must be a string of
@@ -86,29 +460,136 @@ class Machine {
         }
     }
 
+    /** Set the ring settings of my non-reflector rotors to RINGS, indices
+     *  into my alphabet, leftmost first. */
+    void setRings(int[] rings) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            _mainRotors[i].setRing(rings[i - 1]);
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
     }
 
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        advance();
+        _position += 1;
+        return substitute(c);
+    }
+
+    /** Advance my rotors by one keystroke, including double-stepping.
+     *  When no moving rotor is at a notch with a moving rotor to its
+     *  left, which _rotating and _notched tell at once, only the
+     *  rightmost rotor moves. */
+    void advance() {
+        int last = _numRotors - 1;
+        if ((_rotating & (_notched >>> 1)) == 0
+                && _numRotors <= Long.SIZE) {
+            step(last);
+            if (Metrics.ENABLED) {
+                _rotorAdvances += 1;
+            }
+            return;
+        }
         boolean lastRotor = true;
-        for (int i = 0; i < _numRotors - 1; i += 1) {
+        for (int i = 0; i < last; i += 1) {
             if (_mainRotors[i].rotates() && _mainRotors[i + 1].atNotch()) {
-                _mainRotors[i].advance();
-                _mainRotors[i + 1].advance();
-                if (i == _numRotors - 2) {
+                step(i);
+                step(i + 1);
+                if (Metrics.ENABLED) {
+                    countNotchHit(i);
+                }
+                if (i == last - 1) {
                     lastRotor = false;
                 }
                 i += 1;
             }
         }
         if (lastRotor) {
-            _mainRotors[_numRotors - 1].advance();
+            step(last);
+            if (Metrics.ENABLED) {
+                _rotorAdvances += 1;
+            }
         }
+    }
+
+    /** Advance the rotor in slot I, keeping _notched up to date. */
+    private void step(int i) {
+        Rotor rotor = _mainRotors[i];
+        rotor.advance();
+        if (i < Long.SIZE) {
+            if (rotor.atNotch()) {
+                _notched |= 1L << i;
+            } else {
+                _notched &= ~(1L << i);
+            }
+        }
+    }
+
+    /** Count the advance of rotors I and I + 1 caused by the notch of
+     *  rotor I + 1. */
+    private void countNotchHit(int i) {
+        _rotorAdvances += 2;
+        _notchHits += 1;
+        if (i + 1 < _numRotors - 1) {
+            _doubleSteps += 1;
+        }
+    }
+
+    /** Return my stepping counts: rotorAdvances(), notchHits() and
+     *  doubleSteps(), in that order. */
+    long[] stepCounts() {
+        return new long[] { _rotorAdvances, _notchHits, _doubleSteps };
+    }
+
+    /** Set my stepping counts back to COUNTS, as returned by
+     *  stepCounts(), so that advances made since are not counted. */
+    void restoreStepCounts(long[] counts) {
+        _rotorAdvances = counts[0];
+        _notchHits = counts[1];
+        _doubleSteps = counts[2];
+    }
+
+    /** Add COUNTS, stepping counts as returned by stepCounts() of a copy
+     *  of me, to my own. */
+    void addStepCounts(long[] counts) {
+        _rotorAdvances += counts[0];
+        _notchHits += counts[1];
+        _doubleSteps += counts[2];
+    }
+
+    /** Return the number of single-rotor advances I have made (counted
+     *  only when Metrics.ENABLED). */
+    long rotorAdvances() {
+        return _rotorAdvances;
+    }
+
+    /** Return the number of times one of my rotors at its notch has moved
+     *  its left neighbour (counted only when Metrics.ENABLED). */
+    long notchHits() {
+        return _notchHits;
+    }
+
+    /** Return the number of double steps my rotors have made (counted
+     *  only when Metrics.ENABLED). */
+    long doubleSteps() {
+        return _doubleSteps;
+    }
+
+    /** Return the result of passing C (an index into my alphabet) through
+     *  the plugboard, the rotors and the reflector at their current
+     *  settings, without advancing. */
+    int substitute(int c) {
         int output = _plugboard.permute(c);
         for (int i = _numRotors - 1; i >= 0; i -= 1) {
             output = _mainRotors[i].convertForward(output);
@@ -120,17 +601,83 @@ class Machine {
         return output;
     }
 
+    /** Return the current settings of my non-reflector rotors, leftmost
+     *  first. */
+    int[] rotorSettings() {
+        int[] result = new int[_numRotors - 1];
+        for (int i = 1; i < _numRotors; i += 1) {
+            result[i - 1] = _mainRotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Set my non-reflector rotors to SETTINGS, as returned by
+     *  rotorSettings(). */
+    void restoreSettings(int[] settings) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            _mainRotors[i].set(settings[i - 1]);
+        }
+        resetStepping();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String output = "";
-        for (int i = 0; i < msg.length(); i += 1) {
-            int currCharInt = _alphabet.toInt(msg.charAt(i));
-            int convertedCharInt = convert(currCharInt);
-            char convertedChar = _alphabet.toChar(convertedCharInt);
-            output += convertedChar;
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF, updating the state of the rotors accordingly.  IN and
+     *  OUT may be the same array. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] =
+                alpha.toChar(convert(alpha.toInt(in[off + i])));
+        }
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF, each taken as an
+     *  ISO-8859-1 character, into OUT starting at OUTOFF, updating the
+     *  state of the rotors accordingly. */
+    void convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            char c = alpha.toChar(
+                convert(alpha.toInt((char) (in[off + i] & 0xFF))));
+            if (c > 0xFF) {
+                throw error("'%c' does not fit in a byte", c);
+            }
+            out[outOff + i] = (byte) c;
+        }
+    }
+
+    /** Convert all characters remaining in IN into OUT, advancing the
+     *  positions of both buffers and updating the state of the rotors
+     *  accordingly. */
+    void convert(CharBuffer in, CharBuffer out) {
+        int len = in.remaining();
+        if (out.remaining() < len) {
+            throw error("output buffer too small");
+        }
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            Alphabet alpha = _alphabet;
+            while (in.hasRemaining()) {
+                out.put(alpha.toChar(convert(alpha.toInt(in.get()))));
+            }
         }
-        return output;
     }
 
     /** Common alphabet of my rotors. */
@@ -142,13 +689,36 @@ class Machine {
     /** Total number of pawls. */
     private final int _pawls;
 
-    /** All the Rotors available for use. */
-    private Object[] _allRotors;
+    /** All the Rotors available for use, by name, in configuration
+     *  order, as templates for the rotors in my slots.  Shared with my
+     *  copies and never changed. */
+    private final LinkedHashMap<String, Rotor> _allRotors;
 
     /** The specified rotors formatted based on the input file. */
     private Rotor[] _mainRotors;
 
+    /** Largest number of states recorded by skip while looking for a
+     *  stepping period. */
+    private static final int MAX_SEEK_STATES = 1 << 16;
+
+    /** Rotor settings last given to setRotors, or null. */
+    private int[] _start;
+
+    /** Number of characters converted since setRotors. */
+    private long _position;
+
+    /** Bit I is set iff the rotor in slot I moves (for machines of at
+     *  most Long.SIZE slots; 0 otherwise). */
+    private long _rotating;
+
+    /** Bit I is set iff the rotor in slot I moves and is at a notch. */
+    private long _notched;
+
     /**  Plugboard setting. */
     private Permutation _plugboard;
 
+    /** Stepping counts reported by rotorAdvances(), notchHits() and
+     *  doubleSteps(). */
+    private long _rotorAdvances, _notchHits, _doubleSteps;
+
 }
@@ -1,8 +1,371 @@
 package enigma;
+
 import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Duc Nguyen
+ */
 public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval rotors. */
+    private static final String[][] NOTCHES = {
+        { "I", "Q" }, { "II", "E" }, { "III", "V" }, { "IV", "J" },
+        { "V", "Z" }, { "VI", "ZM" }, { "VII", "ZM" }, { "VIII", "ZM" },
+    };
+
+    /** Return a machine with all the naval rotors, configured with
+     *  ROTORS, SETTING and plugboard CYCLES. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String cycles) {
+        Machine m = new Machine(UPPER, 5, 3, navalRotors());
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(cycles, UPPER));
+        return m;
+    }
+
+    /** Return all the naval rotors. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (String[] rotor : NOTCHES) {
+            all.add(new MovingRotor(rotor[0],
+                                    new Permutation(NAVALA.get(rotor[0]),
+                                                    UPPER),
+                                    rotor[1]));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            all.add(new FixedRotor(name,
+                                   new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] { "B", "C" }) {
+            all.add(new Reflector(name,
+                                  new Permutation(NAVALA.get(name), UPPER)));
+        }
+        return all;
+    }
+
+    /** Return a random message of LENGTH upper-case letters. */
+    static String randomMessage(int length) {
+        Random random = new Random(length);
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            msg[i] = UPPER_STRING.charAt(random.nextInt(26));
+        }
+        return new String(msg);
+    }
+
+    /** Standard rotor order used below. */
+    private static final String[] ROTORS =
+        { "B", "Beta", "III", "IV", "I" };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void carroll() {
+        Machine m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void compiledMatchesMachine() {
+        Machine m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        CompiledMachine compiled = new CompiledMachine(m);
+        assertEquals(26 * 26 * 25, compiled.rows());
+        String msg = randomMessage(50000);
+        assertEquals(m.convert(msg), compiled.convert(msg));
+    }
+
+    @Test
+    public void batchMatchesMachines() {
+        Machine template = new Machine(UPPER, 5, 3, navalRotors());
+        List<String[]> orders = template.rotorOrders();
+        Random random = new Random(20);
+        ArrayList<Machine> keys = new ArrayList<>();
+        for (int k = 0; k < 200; k += 1) {
+            Machine m = template.copy();
+            m.insertRotors(orders.get(random.nextInt(orders.size())));
+            char[] setting = new char[4], rings = new char[4];
+            for (int i = 0; i < 4; i += 1) {
+                setting[i] = UPPER_STRING.charAt(random.nextInt(26));
+                rings[i] = UPPER_STRING.charAt(random.nextInt(26));
+            }
+            m.setRotors(new String(setting));
+            m.setRings(new String(rings));
+            m.setPlugboard(new Permutation(k % 2 == 0 ? "(HQ) (EX) (IP)"
+                                           : "(AZ) (BY) (CX) (DW)", UPPER));
+            keys.add(m);
+        }
+        BatchMachine batch = new BatchMachine(keys);
+        assertEquals(200, batch.keys());
+        String msg = randomMessage(2000);
+        String[] converted = batch.convert(msg);
+        for (int k = 0; k < keys.size(); k += 1) {
+            assertEquals("key " + k, keys.get(k).convert(msg), converted[k]);
+        }
+    }
+
+    @Test
+    public void bulkConversions() {
+        String plug = "(HQ) (EX) (IP) (TR) (BY)";
+        String msg = randomMessage(10000);
+        String expected = navalMachine(ROTORS, "AXLE", plug).convert(msg);
+
+        char[] chars = new char[msg.length() + 4];
+        navalMachine(ROTORS, "AXLE", plug)
+            .convert(msg.toCharArray(), 0, msg.length(), chars, 4);
+        assertEquals(expected, new String(chars, 4, msg.length()));
+
+        byte[] bytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+        navalMachine(ROTORS, "AXLE", plug)
+            .convert(bytes, 0, bytes.length, bytes, 0);
+        assertEquals(expected,
+                     new String(bytes, StandardCharsets.ISO_8859_1));
+
+        CharBuffer out = CharBuffer.allocate(msg.length());
+        navalMachine(ROTORS, "AXLE", plug)
+            .convert(CharBuffer.wrap(msg), out);
+        out.flip();
+        assertEquals(expected, out.toString());
+    }
+
     @Test
-    public void goodTests() {
+    public void seekMatchesConversion() {
+        String[] rotors = { "B", "Gamma", "VI", "VIII", "II" };
+        Machine m = navalMachine(rotors, "QDLE", "");
+        String msg = randomMessage(20000);
+        String expected = m.convert(msg);
+        for (int offset : new int[] { 0, 1, 25, 677, 12345, 19999 }) {
+            m.seek(offset);
+            assertEquals(offset, m.position());
+            assertEquals(expected.substring(offset),
+                         m.convert(msg.substring(offset)));
+        }
+    }
+
+    @Test
+    public void steppingMatchesOdometer() {
+        String[] rotors = { "B", "Gamma", "VI", "VIII", "II" };
+        String[] notches = { "", "", "ZM", "ZM", "E" };
+        Machine m = navalMachine(rotors, "QYLC", "");
+        int[] settings = m.rotorSettings();
+        for (int k = 0; k < 20000; k += 1) {
+            boolean[] moves = new boolean[5];
+            boolean last = true;
+            for (int i = 0; i < 4; i += 1) {
+                char next = UPPER_STRING.charAt(settings[i]);
+                if (i >= 2 && notches[i + 1].indexOf(next) >= 0) {
+                    moves[i] = moves[i + 1] = true;
+                    last = i != 3;
+                    i += 1;
+                }
+            }
+            moves[4] |= last;
+            for (int i = 1; i < 5; i += 1) {
+                if (moves[i]) {
+                    settings[i - 1] = (settings[i - 1] + 1) % 26;
+                }
+            }
+            m.advance();
+            assertEquals("keystroke " + k, Arrays.toString(settings),
+                         Arrays.toString(m.rotorSettings()));
+        }
+    }
+
+    @Test
+    public void turnoverDistance() {
+        Machine m = navalMachine(ROTORS, "AAAA", "");
+        assertEquals(16, m.keystrokesToTurnover());
+        for (int k = 0; k < 16; k += 1) {
+            m.advance();
+        }
+        assertEquals(0, m.keystrokesToTurnover());
+        m.advance();
+        assertArrayEquals(new int[] { 0, 0, 1, 17 }, m.rotorSettings());
+        assertEquals(25, m.keystrokesToTurnover());
+    }
+
+    @Test
+    public void seekRegularStack() {
+        for (String setting : new String[] { "AXLE", "AAJQ", "AAIQ" }) {
+            Machine stepped = navalMachine(ROTORS, setting, "");
+            Machine m = navalMachine(ROTORS, setting, "");
+            for (int offset = 0; offset < 40000; offset += 1) {
+                if (offset % 7 == 0 || offset < 1000) {
+                    m.setRotors(setting);
+                    m.seek(offset);
+                    assertEquals(setting + " at " + offset,
+                                 Arrays.toString(stepped.rotorSettings()),
+                                 Arrays.toString(m.rotorSettings()));
+                }
+                stepped.advance();
+            }
+        }
+    }
+
+    @Test
+    public void seekFarAhead() {
+        Machine m = navalMachine(ROTORS, "AXLE", "");
+        m.seek(40_000_000L);
+        int[] far = m.rotorSettings();
+        m.seek(40_000_000L % (26 * 26 * 25));
+        assertArrayEquals(far, m.rotorSettings());
+    }
+
+    @Test
+    public void seekAroundTurnovers() {
+        String[] rotors = { "B", "Gamma", "VI", "VIII", "II" };
+        Machine stepped = navalMachine(rotors, "QDLC", "");
+        Machine m = navalMachine(rotors, "QDLC", "");
+        for (int offset = 0; offset < 2000; offset += 1) {
+            m.setRotors("QDLC");
+            m.seek(offset);
+            assertEquals("offset " + offset,
+                         Arrays.toString(stepped.rotorSettings()),
+                         Arrays.toString(m.rotorSettings()));
+            stepped.advance();
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        String plug = "(HQ) (EX) (IP) (TR) (BY)";
+        String msg = randomMessage(100000);
+        Machine sequential = navalMachine(ROTORS, "AXLE", plug);
+        String expected = sequential.convert(msg);
+        Machine m = navalMachine(ROTORS, "AXLE", plug);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelConverter converter = new ParallelConverter(pool, 1000);
+            assertEquals(expected, converter.convert(m, msg));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(msg.length(), m.position());
+        assertArrayEquals(sequential.rotorSettings(), m.rotorSettings());
+    }
+
+    @Test
+    public void sharedRotors() throws InterruptedException {
+        ArrayList<Rotor> all = navalRotors();
+        String msg = randomMessage(50000);
+        String[] settings = { "AXLE", "BQFZ", "ZZZZ", "MEGA" };
+        String[] results = new String[settings.length];
+        Thread[] threads = new Thread[settings.length];
+        for (int k = 0; k < settings.length; k += 1) {
+            Machine m = new Machine(UPPER, 5, 3, all);
+            m.insertRotors(ROTORS);
+            m.setRotors(settings[k]);
+            m.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+            int slot = k;
+            threads[k] = new Thread(() -> results[slot] = m.convert(msg));
+            threads[k].start();
+        }
+        for (int k = 0; k < settings.length; k += 1) {
+            threads[k].join();
+            Machine alone = navalMachine(ROTORS, settings[k], "(HQ) (EX)");
+            assertEquals("machine " + k, alone.convert(msg), results[k]);
+        }
+    }
+
+    @Test
+    public void thousandsOfRotors() throws IOException {
+        Path source = Files.createTempFile("enigma", ".conf");
+        Path image = Paths.get(source + ConfigImage.SUFFIX);
+        try {
+            StringBuilder text = new StringBuilder(UPPER_STRING);
+            text.append(" 5 3\nB R ").append(NAVALA.get("B"))
+                .append("\nBeta N ").append(NAVALA.get("Beta")).append('\n');
+            for (int i = 0; i < 3000; i += 1) {
+                String[] rotor = NOTCHES[i % 5];
+                text.append('W').append(i).append(" M").append(rotor[1])
+                    .append(' ').append(NAVALA.get(rotor[0])).append('\n');
+            }
+            Files.write(source,
+                        text.toString().getBytes(StandardCharsets.UTF_8));
+            Machine m = Main.readConfig(source.toString());
+            assertEquals(3002, m.availableRotors().size());
+            String[] rotors = { "B", "Beta", "W2997", "W2998", "W2999" };
+            m.insertRotors(rotors);
+            m.setRotors("AXLE");
+            m.setPlugboard(new Permutation("(HQ)", UPPER));
+
+            ConfigImage.write(m, source, image);
+            byte[] bytes = Files.readAllBytes(image);
+            byte[] w0 = { 0, 0, 0, 2, 0, 'W', 0, '0', 0, 0, 0, 1, 0, 'Q' };
+            int at = 0;
+            while (!Arrays.equals(w0, Arrays.copyOfRange(bytes, at,
+                                                         at + w0.length))) {
+                at += 1;
+            }
+            bytes[at + w0.length + 7] = bytes[at + w0.length + 3];
+            Files.write(image, bytes);
+
+            Machine loaded = ConfigImage.loadFor(source.toString());
+            assertNotNull(loaded);
+            loaded.insertRotors(rotors);
+            loaded.setRotors("AXLE");
+            loaded.setPlugboard(new Permutation("(HQ)", UPPER));
+            String msg = randomMessage(2000);
+            assertEquals(m.convert(msg), loaded.convert(msg));
+            try {
+                loaded.insertRotors(new String[] {
+                    "B", "Beta", "W0", "W1", "W2" });
+                fail("corrupt wiring of W0 was accepted");
+            } catch (EnigmaException excp) {
+                /* Expected: W0's table is first read here. */
+            }
+        } finally {
+            Files.deleteIfExists(image);
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Test
+    public void configImageRoundTrip() throws IOException {
+        Path source = Files.createTempFile("enigma", ".conf");
+        Path image = Paths.get(source + ConfigImage.SUFFIX);
+        try {
+            String plug = "(HQ) (EX) (IP) (TR) (BY)";
+            Machine m = navalMachine(ROTORS, "AXLE", plug);
+            ConfigImage.write(m, source, image);
+            Machine loaded = ConfigImage.loadFor(source.toString());
+            assertNotNull(loaded);
+            assertEquals(12, loaded.availableRotors().size());
+            loaded.insertRotors(ROTORS);
+            loaded.setRotors("AXLE");
+            loaded.setPlugboard(new Permutation(plug, loaded.alphabet()));
+            String msg = randomMessage(5000);
+            assertEquals(m.convert(msg), loaded.convert(msg));
+
+            Files.write(source, new byte[] { 'A' });
+            assertNull(ConfigImage.loadFor(source.toString()));
+        } finally {
+            Files.deleteIfExists(image);
+            Files.deleteIfExists(source);
+        }
     }
 }
@@ -1,12 +1,10 @@
 package enigma;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-
-import java.util.Scanner;
-import java.util.NoSuchElementException;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.error;
 
@@ -40,162 +38,370 @@ public final class Main {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        if (!Files.isReadable(Path.of(_configName))) {
+            throw error("could not open %s", _configName);
+        }
 
+        Readable input;
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            input = ChannelReader.open(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            input = ChannelReader.of(System.in);
         }
+        if (PIPELINE) {
+            _readAhead = new ReadAhead(input, PIPELINE_SLOTS, PIPELINE_BATCH);
+            input = _readAhead;
+        }
+        _input = new Lexer(input);
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = ChannelWriter.of(System.out);
+        }
+        if (PIPELINE) {
+            _formatter = new WriteBehind(_output, GROUP_SIZE, LINE_WIDTH,
+                                         PIPELINE_SLOTS, PIPELINE_BATCH);
+        } else {
+            _formatter = new GroupFormatter(_output, GROUP_SIZE, LINE_WIDTH);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
-        try {
-            return new Scanner(new File(name));
-        } catch (IOException excp) {
-            throw error("could not open %s", name);
-        }
+    /** A Main that applies MACHINE, which is already configured, to the
+     *  messages in INPUT, writing the results to OUTPUT. */
+    Main(Machine machine, Readable input, ChannelWriter output) {
+        _configName = null;
+        _machine = machine;
+        _input = new Lexer(input);
+        _output = output;
+        _formatter = new GroupFormatter(_output, GROUP_SIZE, LINE_WIDTH);
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
-        try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
-            throw error("could not open %s", name);
-        }
+    /** A Main that applies MACHINE, which is already configured, to the
+     *  messages read by INPUT, formatting the results onto FORMATTER. */
+    private Main(Machine machine, Lexer input, GroupFormatter formatter) {
+        _configName = null;
+        _machine = machine;
+        _input = input;
+        _formatter = formatter;
+    }
+
+    /** A Main that only reads the configuration file named CONFIG. */
+    private Main(String config) {
+        _configName = config;
+    }
+
+    /** Return an Enigma machine configured from the text configuration
+     *  file named CONFIG. */
+    static Machine readConfig(String config) {
+        return new Main(config).readTextConfig();
+    }
+
+    /** Return a ChannelWriter writing to the file named NAME. */
+    private ChannelWriter getOutput(String name) {
+        return ChannelWriter.open(name);
     }
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine m = readConfig();
-        String[] rotors = new String[m.numRotors()];
-        if (!_input.hasNext("\\*(\\s*[A-Z]+[a-z]*)*")) {
-            throw error("process error! Invalid start!");
-        }
-        while (_input.hasNext("\\*(\\s*[A-Z]+[a-z]*)*")) {
-            String begin = _input.next();
-            if (begin.equals("*")) {
-                rotors[0] = _input.next();
-            } else {
-                rotors[0] = begin.substring(1);
-            }
-            for (int i = 1; i < m.numRotors(); i += 1) {
-                rotors[i] = _input.next();
+     *  results to _output, which is flushed and closed when done. */
+    void process() {
+        try {
+            processMessages();
+        } finally {
+            if (_readAhead != null) {
+                _readAhead.close();
             }
-            m.insertRotors(rotors);
-            String setting = _input.next();
-            setUp(m, setting);
-            String ringSetting = "";
-            Scanner scannerRemain = new Scanner(_input.nextLine());
-            if (scannerRemain.hasNext("(\\s*[A-Z]*[a-z]*[0-9]*_*\\.*)*")) {
-                ringSetting += scannerRemain.next();
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            _formatter.flush();
+            _output.close();
+            if (Metrics.ENABLED) {
+                Metrics.recordWrite(System.nanoTime() - start);
             }
-            m.setRings(ringSetting);
-            String cycles = "";
-            while (scannerRemain.hasNext("(\\([A-Z]+\\))")) {
-                cycles += scannerRemain.next();
+        }
+    }
+
+    /** Apply an Enigma machine configured from _config to the messages
+     *  in _input, sending the results to _output. */
+    private void processMessages() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Machine m = _machine != null ? _machine : readConfig();
+        if (Metrics.ENABLED) {
+            Metrics.recordConfig(System.nanoTime() - start);
+        }
+        _input.skipWhitespace();
+        if (_input.peek() != '*') {
+            throw _input.err("process error! Invalid start!");
+        }
+        if (CACHE != null) {
+            _cache = new KeystreamCache(Path.of(CACHE), CACHE_SIZE);
+        }
+        if (THREADS > 0) {
+            new ParallelSections(m, THREADS, WINDOW, _cache)
+                .process(_input, _output);
+        } else if (PARALLEL > 0) {
+            ForkJoinPool pool = new ForkJoinPool(PARALLEL);
+            try {
+                _parallel = new ParallelConverter(
+                    pool, ParallelConverter.DEFAULT_CHUNK);
+                processSections(m, PARALLEL_BATCH);
+            } finally {
+                pool.shutdownNow();
             }
-            m.setPlugboard(new Permutation(cycles, _alphabet));
+        } else {
+            processSections(m, MESSAGE_CHUNK);
+        }
+    }
+
+    /** Convert the sections in the LEN characters of TEXT, which begin
+     *  with a settings line at line LINE and column COLUMN of the input,
+     *  with a copy of MACHINE, formatting the result onto OUT.  CACHE, if
+     *  not null, is the keystream cache to consult. */
+    static void processSection(Machine machine, char[] text, int len,
+                                int line, int column, GroupFormatter out,
+                                KeystreamCache cache) {
+        Main main = new Main(machine.copy(),
+                             new Lexer(text, len, line, column), out);
+        main._cache = cache;
+        main.processSections(main._machine, Math.min(len, MESSAGE_CHUNK));
+    }
 
-            while (_input.hasNextLine()
-                    && _input.hasNext("(\\s*[A-Z]*[a-z]*[0-9]*_*\\.*)*")) {
-                String nextLine = _input.nextLine();
-                nextLine = nextLine.replaceAll("\\s+", "");
-                printMessageLine(m.convert(nextLine));
+    /** Convert the sections read from INPUT, which begin with a settings
+     *  line at line LINE and column COLUMN of the input, with a copy of
+     *  MACHINE, formatting the result onto OUT, streaming messages
+     *  through a buffer of MESSAGE_CHUNK characters.  CACHE, if not null,
+     *  is the keystream cache to consult. */
+    static void processSection(Machine machine, Readable input, int line,
+                                int column, GroupFormatter out,
+                                KeystreamCache cache) {
+        Main main = new Main(machine.copy(), new Lexer(input, line, column),
+                             out);
+        main._cache = cache;
+        main.processSections(main._machine, MESSAGE_CHUNK);
+    }
+
+    /** Apply M to the sections remaining in _input, which must start
+     *  with a settings line, streaming messages through a buffer of SIZE
+     *  characters. */
+    private void processSections(Machine m, int size) {
+        _alphabet = m.alphabet();
+        String[] rotors = new String[m.numRotors()];
+        char[] buffer = new char[size];
+        CompiledMachine compiled = null;
+        while (true) {
+            _input.skipBlanks();
+            int c = _input.peek();
+            if (c == -1) {
+                break;
+            } else if (c == '*') {
+                endSection(m);
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                readSettings(m, rotors);
+                if (_cache != null) {
+                    compiled = _cache.get(m);
+                } else {
+                    compiled = COMPILED ? new CompiledMachine(m) : null;
+                }
+                if (Metrics.ENABLED) {
+                    beginSection(m, start);
+                }
+            } else if (c == '\n') {
+                _formatter.endLine();
+            } else {
+                convertMessageLine(m, compiled, buffer);
             }
-            if (_input.hasNextLine()
-                    && !_input.hasNext("(\\s*[A-Z]*[a-z]*[0-9]*_*\\.*)*")) {
-                _input.useDelimiter("[ \t*]+");
-                while (_input.hasNext("(\n)+")) {
-                    String empty = _input.next().replaceAll("\r", "");
-                    for (int i = 0; i < empty.length(); i += 1) {
-                        _output.print("\n");
+            _input.nextLine();
+        }
+        endSection(m);
+    }
+
+    /** Start measuring a section converted with M, whose settings line
+     *  was read starting at time START. */
+    private void beginSection(Machine m, long start) {
+        _section = new SectionEvent();
+        _section.begin();
+        _section.parseNanos = System.nanoTime() - start;
+        _section.rotorAdvances = -m.rotorAdvances();
+        _section.notchHits = -m.notchHits();
+        _section.doubleSteps = -m.doubleSteps();
+    }
+
+    /** Finish and record the section being measured, if any, which was
+     *  converted with M. */
+    private void endSection(Machine m) {
+        if (_section == null) {
+            return;
+        }
+        _section.end();
+        _section.rotorAdvances += m.rotorAdvances();
+        _section.notchHits += m.notchHits();
+        _section.doubleSteps += m.doubleSteps();
+        Metrics.recordSection(_section);
+        _section = null;
+    }
+
+    /** Read a settings line from _input and use it to set up M, storing
+     *  its rotor names in ROTORS. */
+    private void readSettings(Machine m, String[] rotors) {
+        _input.expect('*', "'*'");
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotors[i] = _input.token(false, "rotor name");
+        }
+        m.insertRotors(rotors);
+        setUp(m, _input.token(false, "rotor settings"));
+        String ringSetting = "";
+        if (!_input.atEndOfLine() && _input.peek() != '(') {
+            ringSetting = _input.token(false, "ring settings");
+        }
+        m.setRings(ringSetting);
+        StringBuilder cycles = new StringBuilder();
+        while (!_input.atEndOfLine()) {
+            cycles.append(_input.cycle());
+        }
+        m.setPlugboard(new Permutation(cycles.toString(), _alphabet));
+    }
+
+    /** Convert the message on the current line of _input with M, or with
+     *  COMPILED if it is not null, and print it in groups, streaming
+     *  through BUFFER, which is filled MESSAGE_CHUNK characters at a
+     *  time.  If reading fails, the characters read before the failing
+     *  chunk are still converted and printed, whatever BUFFER's size. */
+    private void convertMessageLine(Machine m, CompiledMachine compiled,
+                                    char[] buffer) {
+        int n;
+        do {
+            n = 0;
+            try {
+                while (n < buffer.length) {
+                    int k = _input.message(buffer, n,
+                                           Math.min(MESSAGE_CHUNK,
+                                                    buffer.length - n),
+                                           _alphabet);
+                    if (k == 0) {
+                        break;
                     }
+                    n += k;
                 }
-                _input.useDelimiter("\\s+");
+            } catch (EnigmaException excp) {
+                convertBatch(m, compiled, buffer, n);
+                throw excp;
             }
+            convertBatch(m, compiled, buffer, n);
+        } while (n == buffer.length);
+        _formatter.endLine();
+    }
+
+    /** Convert BUFFER[0 .. N) with M, or with COMPILED if it is not null,
+     *  and print it in groups.  Without COMPILED, the work is split among
+     *  the threads of _parallel, if there are any. */
+    private void convertBatch(Machine m, CompiledMachine compiled,
+                              char[] buffer, int n) {
+        if (n == 0) {
+            return;
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (compiled != null) {
+            compiled.convert(buffer, 0, n, buffer, 0);
+        } else if (_parallel != null) {
+            _parallel.convert(m, buffer, 0, n, buffer, 0);
+        } else {
+            m.convert(buffer, 0, n, buffer, 0);
+        }
+        long converted = Metrics.ENABLED ? System.nanoTime() : 0;
+        _formatter.write(buffer, 0, n);
+        if (Metrics.ENABLED && _section != null) {
+            _section.characters += n;
+            _section.convertNanos += converted - start;
+            _section.writeNanos += System.nanoTime() - converted;
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config, loading it from its precompiled image if that is up
+     *  to date (see ConfigImage). */
     private Machine readConfig() {
-        try {
-            _alphabet = new Alphabet(_config.next());
-            int numRotors = _config.nextInt();
-            int numPawls = _config.nextInt();
-            ArrayList<String> rotorNames = new ArrayList<>();
-            ArrayList<Rotor> allRotors = new ArrayList<>();
-            while (_config.hasNext()) {
-                Rotor rotor = readRotor();
-                if (rotorNames.contains(rotor.name())) {
-                    throw error("readConfig error! Duplicate rotor names");
-                }
-                rotorNames.add(rotor.name());
-                allRotors.add(rotor);
+        Machine loaded = ConfigImage.loadFor(_configName);
+        if (loaded != null) {
+            _alphabet = loaded.alphabet();
+            return loaded;
+        }
+        return readTextConfig();
+    }
+
+    /** Return an Enigma machine configured by parsing the text of the
+     *  configuration file, which is open only while it is read. */
+    private Machine readTextConfig() {
+        try (ChannelReader source = ChannelReader.open(_configName)) {
+            _config = new Lexer(source);
+            return parseConfig();
+        } catch (IOException excp) {
+            throw error("could not close %s", _configName);
+        } finally {
+            _config = null;
+        }
+    }
+
+    /** Return an Enigma machine configured by parsing the text of
+     *  _config. */
+    private Machine parseConfig() {
+        _alphabet = new Alphabet(_config.token(true, "alphabet"));
+        int numRotors = _config.integer("number of rotors");
+        int numPawls = _config.integer("number of pawls");
+        LinkedHashMap<String, Rotor> allRotors = new LinkedHashMap<>();
+        while (!_config.atEnd()) {
+            Rotor rotor = readRotor();
+            if (allRotors.putIfAbsent(rotor.name(), rotor) != null) {
+                throw _config.err("readConfig error! Duplicate rotor names");
             }
-            return new Machine(_alphabet, numRotors, numPawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
         }
+        return new Machine(_alphabet, numRotors, numPawls,
+                           allRotors.values());
     }
 
     /** Return a rotor, reading its description from _config. */
     private Rotor readRotor() {
-        try {
-            Rotor output;
-            String rotorName = _config.next();
-            if (rotorName.contains("(") || rotorName.contains(")")
-                    || rotorName.contains("*") || rotorName.contains(" ")) {
-                throw error("readRotor error! Wrong format for name");
-            }
-            String spec = _config.next();
-            if (spec.contains("(") || spec.contains(")")
-                    || spec.contains("*") || spec.contains(" ")) {
-                throw error("readRotor error! Wrong format for spec");
-            }
-            String cycles = "";
-            while (_config.hasNext(".*[\\(|\\)]+.*")) {
-                cycles += _config.next();
+        Rotor output;
+        String rotorName = _config.token(true, "rotor name");
+        if (rotorName.contains("(") || rotorName.contains(")")
+                || rotorName.contains("*")) {
+            throw _config.err("readRotor error! Wrong format for name");
+        }
+        String spec = _config.token(true, "rotor description");
+        if (spec.contains("(") || spec.contains(")")
+                || spec.contains("*")) {
+            throw _config.err("readRotor error! Wrong format for spec");
+        }
+        StringBuilder cycles = new StringBuilder();
+        while (!_config.atEnd() && _config.peek() == '(') {
+            cycles.append(_config.token(true, "cycle"));
+        }
+        Permutation perm = new Permutation(cycles.toString(), _alphabet);
+        String kind = "" + spec.charAt(0);
+        String notches = spec.substring(1);
+        switch (kind) {
+        case "R":
+            output = new Reflector(rotorName, perm);
+            break;
+        case "N":
+            output = new FixedRotor(rotorName, perm);
+            break;
+        case "M":
+            if (notches.length() == 0) {
+                throw _config.err("readRotor error! "
+                                  + "Moving rotor with no notch");
             }
-            Permutation perm = new Permutation(cycles, _alphabet);
-            String kind = "" + spec.charAt(0);
-            String notches = spec.substring(1);
-            switch (kind) {
-            case "R":
-                output = new Reflector(rotorName, perm);
-                break;
-            case "N":
-                output = new FixedRotor(rotorName, perm);
-                break;
-            case "M":
-                if (notches.length() == 0) {
-                    throw error("readRotor error! Moving rotor with no notch");
+            for (int i = 0; i < notches.length(); i += 1) {
+                if (!_alphabet.contains(notches.charAt(i))) {
+                    throw _config.err("readRotor error! Notch not in alphabet");
                 }
-                for (int i = 0; i < notches.length(); i += 1) {
-                    if (!_alphabet.contains(notches.charAt(i))) {
-                        throw error("readRotor error! Notch not in alphabet");
-                    }
-                }
-                output = new MovingRotor(rotorName, perm, notches);
-                break;
-            default:
-                throw error("readRotor error! Unidentified rotor type");
             }
-            return output;
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            output = new MovingRotor(rotorName, perm, notches);
+            break;
+        default:
+            throw _config.err("readRotor error! Unidentified rotor type");
         }
+        return output;
     }
 
     /** Set M according to the specification given on SETTINGS,
@@ -207,27 +413,88 @@ public final class Main {
         M.setRotors(settings);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 1) {
-            _output.print(msg.charAt(i));
-            if ((i + 1) % 5 == 0 && (i < msg.length() - 1)) {
-                _output.print(" ");
-            }
-        }
-        _output.print("\n");
-    }
+    /** True iff each section is converted by a CompiledMachine (enabled
+     *  with -Denigma.compiled=true). */
+    static final boolean COMPILED = Boolean.getBoolean("enigma.compiled");
+
+    /** Directory of the shared keystream cache consulted for each
+     *  section, or null for none (-Denigma.cache=DIR). */
+    static final String CACHE = System.getProperty("enigma.cache");
+
+    /** Bound on the size of the keystream cache in bytes
+     *  (-Denigma.cacheSize=N). */
+    static final long CACHE_SIZE = Long.getLong("enigma.cacheSize", 1L << 30);
+
+    /** Number of threads converting sections in parallel, or 0 to
+     *  convert them one after another (-Denigma.threads=N). */
+    static final int THREADS = Integer.getInteger("enigma.threads", 0);
+
+    /** Number of threads sharing the conversion of each long message
+     *  line, or 0 for none (-Denigma.parallel=N).  Ignored when sections
+     *  are converted in parallel. */
+    static final int PARALLEL = Integer.getInteger("enigma.parallel", 0);
+
+    /** Number of message characters converted at a time when message
+     *  lines are shared between threads. */
+    static final int PARALLEL_BATCH = 1 << 22;
+
+    /** Bound on the input characters of sections being converted in
+     *  parallel and awaiting output (-Denigma.window=N). */
+    static final int WINDOW = Integer.getInteger("enigma.window", 1 << 20);
+
+    /** True iff input is read ahead and output formatted and written
+     *  behind conversion, on threads of their own
+     *  (-Denigma.pipeline=true). */
+    static final boolean PIPELINE = Boolean.getBoolean("enigma.pipeline");
+
+    /** Number of batches in each pipeline ring. */
+    static final int PIPELINE_SLOTS = 16;
+
+    /** Number of characters in each pipeline batch. */
+    static final int PIPELINE_BATCH = 1 << 13;
+
+    /** Number of characters per output group (-Denigma.group=N). */
+    static final int GROUP_SIZE = Integer.getInteger("enigma.group", 5);
+
+    /** Maximum output line width, or 0 for none (-Denigma.width=N). */
+    static final int LINE_WIDTH = Integer.getInteger("enigma.width", 0);
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Number of message characters converted at a time. */
+    static final int MESSAGE_CHUNK = 1 << 12;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private Lexer _input;
+
+    /** Machine given to the constructor, or null if it is to be read
+     *  from _config. */
+    private Machine _machine;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Stage reading ahead of _input, or null if there is none. */
+    private ReadAhead _readAhead;
+
+    /** Keystream cache consulted for each section, or null. */
+    private KeystreamCache _cache;
+
+    /** Converter sharing long message lines between threads, or null. */
+    private ParallelConverter _parallel;
+
+    /** Name of the machine configuration file. */
+    private final String _configName;
+
+    /** Source of machine configuration, while it is being read. */
+    private Lexer _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private ChannelWriter _output;
+
+    /** Groups converted messages onto _output. */
+    private GroupFormatter _formatter;
+
+    /** Figures for the section being converted, when Metrics.ENABLED. The
+     *  stepping counts are offset by the machine's counts at its start
+     *  until endSection. */
+    private SectionEvent _section;
 }
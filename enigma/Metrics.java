@@ -0,0 +1,155 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Process-wide counters of what the simulator has done, published as a
+ *  JMX MBean.  Nothing is counted unless the system property
+ *  enigma.metrics is true; since ENABLED is a constant, the JIT removes
+ *  the counting code entirely otherwise.  Per-section figures are also
+ *  emitted as SectionEvents for Flight Recorder.
+ *
+ *  Rotor advances, notch hits and double steps count the stepping done
+ *  while converting, including that of machine copies in the parallel
+ *  modes, but not seeks or the compiling of sections.  Sections converted
+ *  from compiled tables (enigma.compiled or enigma.cache) do no stepping
+ *  and so add nothing to these three counts.
+ *  @author Duc Nguyen
+ */
+public final class Metrics implements MetricsMBean {
+
+    /** True iff counting is on (-Denigma.metrics=true). */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** JMX name under which the counters are registered. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** The single instance. */
+    static final Metrics INSTANCE = new Metrics();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, new ObjectName(NAME));
+            } catch (JMException excp) {
+                System.err.printf("Warning: metrics not registered: %s%n",
+                                  excp.getMessage());
+            }
+        }
+    }
+
+    /** Add the NANOS spent reading a configuration to the parse time. */
+    static void recordConfig(long nanos) {
+        INSTANCE._parseNanos.add(nanos);
+    }
+
+    /** Add the NANOS spent writing output outside any section to the
+     *  write time. */
+    static void recordWrite(long nanos) {
+        INSTANCE._writeNanos.add(nanos);
+    }
+
+    /** Count a keystream cache lookup, a hit iff HIT, after which
+     *  EVICTED images were deleted. */
+    static void recordCache(boolean hit, int evicted) {
+        Metrics m = INSTANCE;
+        (hit ? m._cacheHits : m._cacheMisses).increment();
+        m._cacheEvictions.add(evicted);
+    }
+
+    /** Add the figures of the finished section EVENT to the totals and
+     *  commit it to Flight Recorder. */
+    static void recordSection(SectionEvent event) {
+        Metrics m = INSTANCE;
+        m._sections.increment();
+        m._characters.add(event.characters);
+        m._rotorAdvances.add(event.rotorAdvances);
+        m._notchHits.add(event.notchHits);
+        m._doubleSteps.add(event.doubleSteps);
+        m._parseNanos.add(event.parseNanos);
+        m._convertNanos.add(event.convertNanos);
+        m._writeNanos.add(event.writeNanos);
+        event.commit();
+    }
+
+    /** Not instantiable, except for INSTANCE. */
+    private Metrics() {
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getSections() {
+        return _sections.sum();
+    }
+
+    @Override
+    public long getRotorAdvances() {
+        return _rotorAdvances.sum();
+    }
+
+    @Override
+    public long getNotchHits() {
+        return _notchHits.sum();
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return _parseNanos.sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convertNanos.sum();
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return _writeNanos.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return _cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return _cacheMisses.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return _cacheEvictions.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder count : new LongAdder[] {
+                _characters, _sections, _rotorAdvances, _notchHits,
+                _doubleSteps, _parseNanos, _convertNanos, _writeNanos,
+                _cacheHits, _cacheMisses, _cacheEvictions }) {
+            count.reset();
+        }
+    }
+
+    /** Totals reported by the corresponding getters. */
+    private final LongAdder _characters = new LongAdder(),
+        _sections = new LongAdder(), _rotorAdvances = new LongAdder(),
+        _notchHits = new LongAdder(), _doubleSteps = new LongAdder(),
+        _parseNanos = new LongAdder(), _convertNanos = new LongAdder(),
+        _writeNanos = new LongAdder(), _cacheHits = new LongAdder(),
+        _cacheMisses = new LongAdder(), _cacheEvictions = new LongAdder();
+
+}
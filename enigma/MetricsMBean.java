@@ -0,0 +1,52 @@
+package enigma;
+
+/** Management interface of Metrics, under the JMX name
+ *  "enigma:type=Metrics".  All counts are totals since start-up or the
+ *  last reset().
+ *  @author Duc Nguyen
+ */
+public interface MetricsMBean {
+
+    /** Return the number of message characters converted. */
+    long getCharacters();
+
+    /** Return the number of message sections (settings lines) processed. */
+    long getSections();
+
+    /** Return the number of single-rotor advances. */
+    long getRotorAdvances();
+
+    /** Return the number of times a rotor at its notch moved the rotor to
+     *  its left. */
+    long getNotchHits();
+
+    /** Return the number of double steps: a rotor other than the
+     *  rightmost advancing because it was itself at a notch. */
+    long getDoubleSteps();
+
+    /** Return the time spent reading configurations and settings lines,
+     *  in nanoseconds. */
+    long getParseNanos();
+
+    /** Return the time spent converting messages, in nanoseconds. */
+    long getConvertNanos();
+
+    /** Return the time spent formatting and writing output, in
+     *  nanoseconds. */
+    long getWriteNanos();
+
+    /** Return the number of keystream cache lookups that found an
+     *  image. */
+    long getCacheHits();
+
+    /** Return the number of keystream cache lookups that compiled. */
+    long getCacheMisses();
+
+    /** Return the number of images the keystream cache deleted to stay
+     *  within its size. */
+    long getCacheEvictions();
+
+    /** Set all counts to 0. */
+    void reset();
+
+}
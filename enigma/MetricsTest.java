@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.navalMachine;
+import static enigma.MachineTest.navalRotors;
+import static enigma.MachineTest.randomMessage;
+import static enigma.TestUtils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The suite of all JUnit tests for the counts kept by Machine and
+ *  Metrics.  The counts are only kept when run with
+ *  -Denigma.metrics=true, as the unit target of the Makefile does;
+ *  otherwise these tests check that nothing is counted.
+ *  @author Duc Nguyen
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Rotors whose middle rotor double-steps on the third keystroke
+     *  from DOUBLE_STEP. */
+    private static final String[] ROTORS =
+        { "B", "Beta", "I", "II", "III" };
+
+    /** Settings AADU, stepping through AADV, AAEW, ABFX and ABFY. */
+    private static final String DOUBLE_STEP = "AADU";
+
+    /** Return COUNT if counting is on, else 0. */
+    private static long counted(long count) {
+        return Metrics.ENABLED ? count : 0;
+    }
+
+    /** Assert that M's stepping counts are ADVANCES, NOTCHHITS and
+     *  DOUBLESTEPS, as far as they are counted. */
+    private static void assertCounts(long advances, long notchHits,
+                                     long doubleSteps, Machine m) {
+        assertEquals(Arrays.toString(new long[] {
+                    counted(advances), counted(notchHits),
+                    counted(doubleSteps) }),
+            Arrays.toString(m.stepCounts()));
+    }
+
+    /** Return the current Metrics totals, in the order of the MBean's
+     *  getters. */
+    private static long[] totals() {
+        Metrics m = Metrics.INSTANCE;
+        return new long[] {
+            m.getCharacters(), m.getSections(), m.getRotorAdvances(),
+            m.getNotchHits(), m.getDoubleSteps(), m.getParseNanos(),
+            m.getConvertNanos(), m.getWriteNanos()
+        };
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void countsDoubleStep() {
+        Machine m = navalMachine(ROTORS, DOUBLE_STEP, "");
+        m.convert("ABCD");
+        assertEquals("[0, 1, 5, 24]", Arrays.toString(m.rotorSettings()));
+        assertCounts(7, 2, 1, m);
+        m.convert("E");
+        assertCounts(8, 2, 1, m);
+    }
+
+    @Test
+    public void seekAndCompileAreNotCounted() {
+        Machine m = navalMachine(ROTORS, DOUBLE_STEP, "");
+        m.convert("ABCD");
+        m.seek(20000);
+        new CompiledMachine(m);
+        assertCounts(7, 2, 1, m);
+    }
+
+    @Test
+    public void parallelCountsCopies() {
+        String msg = randomMessage(20000);
+        Machine sequential = navalMachine(ROTORS, DOUBLE_STEP, "");
+        sequential.convert(msg);
+        Machine m = navalMachine(ROTORS, DOUBLE_STEP, "");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            new ParallelConverter(pool, 700).convert(m, msg);
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(sequential.notchHits() >= counted(20000 / 26));
+        assertEquals(Arrays.toString(sequential.stepCounts()),
+                     Arrays.toString(m.stepCounts()));
+    }
+
+    @Test
+    public void countsSections() {
+        String input = "* B Beta I II III AADU\nHEL LO\n\n"
+            + "* B Beta I II III AAAA\nAB\n";
+        long[] before = totals();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Main(new Machine(UPPER, 5, 3, navalRotors()),
+                 new StringReader(input),
+                 new ChannelWriter(Channels.newChannel(bytes), UTF_8))
+            .process();
+        long[] after = totals();
+        long[] expected = { 7, 2, 8 + 2, 2, 1 };
+        for (int i = 0; i < expected.length; i += 1) {
+            assertEquals("count " + i, counted(expected[i]),
+                         after[i] - before[i]);
+        }
+        for (int i = expected.length; i < after.length; i += 1) {
+            assertEquals("time " + i, Metrics.ENABLED,
+                         after[i] > before[i]);
+        }
+    }
+
+}
@@ -11,8 +11,22 @@ class MovingRotor extends Rotor {
      *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
-        super(name, perm);
-        this._notches = notches;
+        super(new Wiring(name, perm, notches));
+    }
+
+    /** A moving rotor in its 0 setting with wiring WIRING. */
+    MovingRotor(Wiring wiring) {
+        super(wiring);
+    }
+
+    /** A copy of ORIGINAL. */
+    MovingRotor(MovingRotor original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
     }
 
     @Override
@@ -22,21 +36,17 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i += 1) {
-            char currChar = _notches.charAt(i);
-            if (setting() == permutation().alphabet().toInt(currChar)) {
-                return true;
-            }
-        }
-        return false;
+        return wiring().notchAt(setting());
     }
 
     @Override
-    void advance() {
-        set((setting() + 1) % size());
+    int distanceToNotch() {
+        return wiring().distanceToNotch(setting());
     }
 
-    /** Only moving rotors can have notch(es). */
-    private String _notches;
+    @Override
+    void advance() {
+        step();
+    }
 
 }
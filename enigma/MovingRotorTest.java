@@ -64,6 +64,26 @@ public class MovingRotorTest {
         checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "ZM");
+        rotor.set(0);
+        assertFalse(rotor.atNotch());
+        assertEquals(12, rotor.distanceToNotch());
+        rotor.set(12);
+        assertTrue(rotor.atNotch());
+        assertEquals(0, rotor.distanceToNotch());
+        rotor.advance();
+        assertEquals(12, rotor.distanceToNotch());
+        rotor.set(25);
+        assertTrue(rotor.atNotch());
+        rotor.advance();
+        assertEquals(0, rotor.setting());
+        checkRotor("Rotor VI wrapped", UPPER_STRING, NAVALA_MAP.get("VI"));
+        setRotor("I", NAVALA, "");
+        assertEquals(-1, rotor.distanceToNotch());
+    }
+
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
@@ -0,0 +1,349 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static enigma.EnigmaException.error;
+
+/** Scores candidate plaintexts by how much they resemble a corpus: the
+ *  sum of the log-probabilities of their n-grams, as counted in the
+ *  corpus.  Higher scores are better.
+ *
+ *  A scorer holds a table for every n-gram length from 1 up to its
+ *  order, each a flat float array indexed by packing the alphabet
+ *  indices of an n-gram's letters into fixed-width bit fields, so that
+ *  the index of each n-gram of a text is rolled from the last one with a
+ *  shift, an or and a mask.  Tables are counted from a corpus, or loaded
+ *  from a binary image written by save (see main).
+ *
+ *  Usage: java enigma.NGramScorer CONFIG CORPUS TABLES [ORDER]
+ *  counts the n-grams of the text file CORPUS, in the alphabet of the
+ *  configuration CONFIG, up to length ORDER (default 4), and writes them
+ *  to the binary file TABLES, which load reads much faster than a
+ *  corpus.
+ *  @author Duc Nguyen
+ */
+public final class NGramScorer {
+
+    /** First word of a binary image. */
+    static final int MAGIC = 0x454e4732;
+
+    /** Format version of binary images. */
+    static final int VERSION = 1;
+
+    /** Largest number of entries allowed in one table. */
+    static final int MAX_TABLE = 1 << 26;
+
+    /** Write the tables described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.NGramScorer CONFIG CORPUS "
+                            + "TABLES [ORDER]");
+            }
+            int order;
+            try {
+                order = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+            } catch (NumberFormatException excp) {
+                throw error("order is not an integer: %s", args[3]);
+            }
+            Alphabet alpha = Main.readConfig(args[0]).alphabet();
+            try (ChannelReader corpus = ChannelReader.open(args[1])) {
+                new NGramScorer(alpha, order, corpus).save(args[2]);
+            } catch (IOException excp) {
+                throw error("could not close %s", args[1]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A scorer of texts in ALPHA by their n-grams of lengths 1 to ORDER,
+     *  counted in the characters read from CORPUS.  Corpus characters
+     *  not in ALPHA are taken in upper case if that is in ALPHA, and are
+     *  skipped otherwise. */
+    NGramScorer(Alphabet alpha, int order, Readable corpus) {
+        this(alpha, order);
+        long[][] counts = new long[order + 1][];
+        for (int k = 1; k <= order; k += 1) {
+            counts[k] = new long[_tables[k].length];
+        }
+        int index = 0, seen = 0;
+        CharBuffer buffer = CharBuffer.allocate(1 << 13);
+        try {
+            while (corpus.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    int c = letter(alpha, buffer.get());
+                    if (c >= 0) {
+                        index = (index << _bits | c) & _masks[order];
+                        seen += 1;
+                        for (int k = 1; k <= order && k <= seen; k += 1) {
+                            counts[k][index & _masks[k]] += 1;
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw error("could not read corpus: %s", excp.getMessage());
+        }
+        if (seen < order) {
+            throw error("corpus has no %d-grams", order);
+        }
+        for (int k = 1; k <= order; k += 1) {
+            long total = seen - k + 1;
+            float floor = (float) Math.log10(0.01 / total);
+            float[] table = _tables[k];
+            for (int i = 0; i < table.length; i += 1) {
+                table[i] = counts[k][i] == 0 ? floor
+                    : (float) Math.log10((double) counts[k][i] / total);
+            }
+        }
+    }
+
+    /** A scorer for ALPHA with empty tables for n-grams of lengths 1 to
+     *  ORDER. */
+    private NGramScorer(Alphabet alpha, int order) {
+        int n = alpha.size();
+        _alphabet = alpha;
+        _bits = 32 - Integer.numberOfLeadingZeros(Math.max(n - 1, 1));
+        if (order < 1 || (long) _bits * order > 31
+            || 1L << (_bits * order) > MAX_TABLE) {
+            throw error("n-gram table too large");
+        }
+        _order = order;
+        _tables = new float[order + 1][];
+        _masks = new int[order + 1];
+        for (int k = 1; k <= order; k += 1) {
+            _masks[k] = (1 << (_bits * k)) - 1;
+            _tables[k] = new float[1 << (_bits * k)];
+        }
+    }
+
+    /** Return a scorer for ALPHA of n-grams of lengths up to ORDER, read
+     *  from the file named FILE: either a binary image written by save
+     *  (for ALPHA and of at least ORDER), or a text corpus. */
+    static NGramScorer load(Alphabet alpha, int order, String file) {
+        Path path = Paths.get(file);
+        try (FileChannel channel = FileChannel.open(path)) {
+            if (channel.size() >= 4) {
+                MappedByteBuffer buf = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buf.getInt() == MAGIC) {
+                    return read(alpha, order, buf, file);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        try (ChannelReader reader = ChannelReader.open(file)) {
+            return new NGramScorer(alpha, order, reader);
+        } catch (IOException excp) {
+            throw error("could not close %s", file);
+        }
+    }
+
+    /** Return the scorer for ALPHA of n-grams up to ORDER in BUF, a
+     *  binary image named FILE positioned just after its magic
+     *  number. */
+    private static NGramScorer read(Alphabet alpha, int order,
+                                    ByteBuffer buf, String file) {
+        if (buf.remaining() < 2 * 4) {
+            throw error("%s is damaged", file);
+        }
+        if (buf.getInt() != VERSION) {
+            throw error("%s: unsupported version", file);
+        }
+        int n = buf.getInt();
+        if (n != alpha.size()) {
+            throw error("%s is for a different alphabet", file);
+        }
+        if (buf.remaining() < 2L * n + 4) {
+            throw error("%s is damaged", file);
+        }
+        char[] chars = new char[n];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = buf.getChar();
+        }
+        for (int i = 0; i < chars.length; i += 1) {
+            if (alpha.toChar(i) != chars[i]) {
+                throw error("%s is for a different alphabet", file);
+            }
+        }
+        int stored = buf.getInt();
+        if (stored < order) {
+            throw error("%s has no %d-grams", file, order);
+        }
+        NGramScorer result = new NGramScorer(alpha, order);
+        long length = 0;
+        for (int k = 1; k <= stored; k += 1) {
+            if ((long) result._bits * k > 31) {
+                throw error("%s is damaged", file);
+            }
+            length += 4L << (result._bits * k);
+        }
+        if (length != buf.remaining()) {
+            throw error("%s is damaged", file);
+        }
+        for (int k = 1; k <= order; k += 1) {
+            buf.asFloatBuffer().get(result._tables[k]);
+            buf.position(buf.position() + 4 * result._tables[k].length);
+        }
+        return result;
+    }
+
+    /** Write my tables to the file named FILE, replacing it atomically,
+     *  in the format read by load. */
+    void save(String file) {
+        int n = _alphabet.size();
+        long size = 4 * 4 + 2 * n;
+        for (int k = 1; k <= _order; k += 1) {
+            size += 4L * _tables[k].length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw error("n-gram tables too large to save");
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            buf.putChar(_alphabet.toChar(i));
+        }
+        buf.putInt(_order);
+        for (int k = 1; k <= _order; k += 1) {
+            buf.asFloatBuffer().put(_tables[k]);
+            buf.position(buf.position() + 4 * _tables[k].length);
+        }
+        Path target = Paths.get(file);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(
+                target.toAbsolutePath().getParent(), ".enigma", ".tmp");
+            Files.write(temp, buf.array());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", file, excp.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore: the write has failed regardless. */
+                }
+            }
+        }
+    }
+
+    /** Return the index in ALPHA of C, or of C in upper case, or -1 if
+     *  neither is in ALPHA. */
+    private static int letter(Alphabet alpha, char c) {
+        int result = alpha.indexOf(c);
+        if (result < 0) {
+            result = alpha.indexOf(Character.toUpperCase(c));
+        }
+        return result;
+    }
+
+    /** Return the length of the longest n-grams I score. */
+    int order() {
+        return _order;
+    }
+
+    /** Return the score of the text TEXT[0 .. LEN), given as alphabet
+     *  indices, by its n-grams of length order(). */
+    double score(int[] text, int len) {
+        return score(_order, text, len);
+    }
+
+    /** Return the score of the text TEXT[0 .. LEN), given as alphabet
+     *  indices, by its n-grams of length K, where 1 <= K <= order(). */
+    double score(int k, int[] text, int len) {
+        float[] table = _tables[k];
+        int mask = _masks[k], bits = _bits;
+        int index = 0;
+        double result = 0;
+        for (int i = 0; i < k - 1 && i < len; i += 1) {
+            index = index << bits | text[i];
+        }
+        for (int i = k - 1; i < len; i += 1) {
+            index = (index << bits | text[i]) & mask;
+            result += table[index];
+        }
+        return result;
+    }
+
+    /** Return the score of the text TEXT[0 .. LEN), given as unsigned
+     *  byte alphabet indices, by its n-grams of length order(). */
+    double score(byte[] text, int len) {
+        int k = _order;
+        float[] table = _tables[k];
+        int mask = _masks[k], bits = _bits;
+        int index = 0;
+        double result = 0;
+        for (int i = 0; i < k - 1 && i < len; i += 1) {
+            index = index << bits | text[i] & 0xFF;
+        }
+        for (int i = k - 1; i < len; i += 1) {
+            index = (index << bits | text[i] & 0xFF) & mask;
+            result += table[index];
+        }
+        return result;
+    }
+
+    /** Return the score (as for score(int[], int)) of NEWTEXT[0 .. LEN),
+     *  given that SCORE is that of OLDTEXT[0 .. LEN) and that the two
+     *  differ only at the COUNT positions in CHANGED, in increasing
+     *  order.  Only the n-grams overlapping those positions are looked
+     *  up, as when one plugboard pair changes. */
+    double rescore(int[] oldText, int[] newText, int len, double score,
+                   int[] changed, int count) {
+        int k = _order;
+        float[] table = _tables[k];
+        int bits = _bits;
+        int done = k - 2;
+        for (int c = 0; c < count; c += 1) {
+            int p = changed[c];
+            int last = Math.min(p + k - 1, len - 1);
+            for (int end = Math.max(p, done + 1); end <= last; end += 1) {
+                int oldIndex = 0, newIndex = 0;
+                for (int i = end - k + 1; i <= end; i += 1) {
+                    oldIndex = oldIndex << bits | oldText[i];
+                    newIndex = newIndex << bits | newText[i];
+                }
+                score += table[newIndex] - table[oldIndex];
+            }
+            done = Math.max(done, last);
+        }
+        return score;
+    }
+
+    /** Alphabet of the texts I score. */
+    private final Alphabet _alphabet;
+
+    /** Number of bits per letter in a table index. */
+    private final int _bits;
+
+    /** Length of my longest n-grams. */
+    private final int _order;
+
+    /** _tables[k][i] is the log-probability of the k-gram whose letters'
+     *  indices are the _bits-wide fields of i, first letter most
+     *  significant.  Absent k-grams get the log of 0.01 over the number
+     *  of k-grams in the corpus, as do indices that are not k-grams. */
+    private final float[][] _tables;
+
+    /** _masks[k] selects the index bits of a k-gram. */
+    private final int[] _masks;
+
+}
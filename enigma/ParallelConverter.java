@@ -0,0 +1,127 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.error;
+
+/** Converts a single long message on several cores.  The message is split
+ *  into chunks; each chunk is converted by its own copy of the machine,
+ *  positioned at the chunk's keystream offset with Machine.seek, and
+ *  written to its own slice of the output.  The result is the same as
+ *  converting the whole message with the original machine.
+ *  @author Duc Nguyen
+ */
+class ParallelConverter {
+
+    /** Default number of characters converted by one task. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** A converter running its tasks on POOL, giving each task at most
+     *  CHUNK characters. */
+    ParallelConverter(ForkJoinPool pool, int chunk) {
+        if (chunk <= 0) {
+            throw error("chunk size must be positive");
+        }
+        _pool = pool;
+        _chunk = chunk;
+    }
+
+    /** A converter using the common pool and the default chunk size. */
+    ParallelConverter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF using MACHINE, which must have had its rotors set.  On
+     *  return MACHINE is positioned after the last converted character,
+     *  exactly as if it had converted them itself, and when
+     *  Metrics.ENABLED, its stepping counts include those of the
+     *  copies. */
+    void convert(Machine machine, char[] in, int off, int len,
+                 char[] out, int outOff) {
+        if (len <= _chunk) {
+            machine.convert(in, off, len, out, outOff);
+            return;
+        }
+        long start = machine.position();
+        Chunk all = new Chunk(machine, start, in, off, out, outOff, 0, len);
+        _pool.invoke(all);
+        machine.seek(start + len);
+        if (Metrics.ENABLED) {
+            machine.addStepCounts(all._counts);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG by MACHINE, as for
+     *  convert(Machine, char[], int, int, char[], int). */
+    String convert(Machine machine, String msg) {
+        char[] buffer = msg.toCharArray();
+        convert(machine, buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer);
+    }
+
+    /** The conversion of characters [LO .. HI) of a message. */
+    private class Chunk extends RecursiveAction {
+
+        /** Converts characters [LO .. HI) of the message at IN[OFF..] into
+         *  OUT[OUTOFF..], using copies of MACHINE, whose position at the
+         *  start of the message is START. */
+        Chunk(Machine machine, long start, char[] in, int off,
+              char[] out, int outOff, int lo, int hi) {
+            _machine = machine;
+            _start = start;
+            _in = in;
+            _off = off;
+            _out = out;
+            _outOff = outOff;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= _chunk) {
+                Machine local = _machine.copy();
+                local.seek(_start + _lo);
+                local.convert(_in, _off + _lo, _hi - _lo, _out, _outOff + _lo);
+                _counts = local.stepCounts();
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                Chunk left = new Chunk(_machine, _start, _in, _off,
+                                       _out, _outOff, _lo, mid);
+                Chunk right = new Chunk(_machine, _start, _in, _off,
+                                        _out, _outOff, mid, _hi);
+                invokeAll(left, right);
+                _counts = left._counts;
+                for (int i = 0; i < _counts.length; i += 1) {
+                    _counts[i] += right._counts[i];
+                }
+            }
+        }
+
+        /** Machine whose copies do the converting. */
+        private final Machine _machine;
+        /** Position of _machine at the start of the message. */
+        private final long _start;
+        /** Message characters. */
+        private final char[] _in;
+        /** Start of the message in _in. */
+        private final int _off;
+        /** Destination of converted characters. */
+        private final char[] _out;
+        /** Start of the converted message in _out. */
+        private final int _outOff;
+        /** Bounds of my slice of the message. */
+        private final int _lo, _hi;
+        /** Stepping counts of the copies converting my slice. */
+        private long[] _counts;
+    }
+
+    /** Pool running my tasks. */
+    private final ForkJoinPool _pool;
+
+    /** Largest number of characters converted by one task. */
+    private final int _chunk;
+
+}
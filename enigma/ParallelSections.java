@@ -0,0 +1,311 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.error;
+
+/** Converts the sections of an input, each a settings line and the
+ *  message lines up to the next one, on a pool of threads, each section
+ *  with its own copy of the machine.  The reading thread splits the input
+ *  at settings lines into chunks of whole sections of about CHUNK
+ *  characters (so that short sections are not handed out one by one),
+ *  hands each chunk to the pool, and writes the formatted output of the
+ *  chunks in input order as they finish.
+ *  Since every section sets up its machine from scratch and every
+ *  message line ends its output line, the result is just what Main
+ *  writes converting them one after another: the same blank lines, and
+ *  on an error, the same output before the error is reported.
+ *
+ *  Memory is bounded by a window: once the chunks handed out and not yet
+ *  written hold more than that many input characters, reading waits for
+ *  the oldest to be written.  A single section that outgrows the window
+ *  is not held whole: once the chunks before it are written, the rest of
+ *  it is streamed from the input and converted on the reading thread,
+ *  just as Main converts it, and chunking resumes at the next section.
+ *  @author Duc Nguyen
+ */
+final class ParallelSections {
+
+    /** Number of input characters at which a chunk is handed out. */
+    static final int CHUNK = 1 << 16;
+
+    /** Converter of sections of input for MACHINE (configured, with or
+     *  without rotors) on THREADS threads, with at most about WINDOW
+     *  input characters in progress at once.  CACHE, if not null, is the
+     *  keystream cache to consult for each section. */
+    ParallelSections(Machine machine, int threads, int window,
+                     KeystreamCache cache) {
+        if (threads <= 0 || window <= 0) {
+            throw error("bad thread count or window");
+        }
+        _machine = machine;
+        _threads = threads;
+        _window = window;
+        _cache = cache;
+    }
+
+    /** Convert the sections read by INPUT, which must be at a settings
+     *  line, writing the results to OUTPUT in order. */
+    void process(Lexer input, ChannelWriter output) {
+        ExecutorService workers =
+            Executors.newFixedThreadPool(_threads, runnable -> {
+                Thread thread = new Thread(runnable, "enigma-section");
+                thread.setDaemon(true);
+                return thread;
+            });
+        ArrayDeque<Chunk> pending = new ArrayDeque<>();
+        try {
+            StringBuilder text = new StringBuilder();
+            int line = input.line(), column = input.column();
+            int section = 0;
+            int sectionLine = line, sectionColumn = column;
+            long inFlight = 0;
+            while (true) {
+                int c = 0;
+                boolean ended;
+                try {
+                    int room = _window - (text.length() - section);
+                    ended = input.copyLine(text, Math.max(room, 1));
+                    if (ended) {
+                        input.skipBlanks();
+                        c = input.peek();
+                    }
+                } catch (EnigmaException excp) {
+                    writeAll(pending, output);
+                    throw excp;
+                }
+                if (!ended || c != '*' && c != -1
+                    && text.length() - section >= _window) {
+                    String rest = text.substring(section);
+                    text.setLength(section);
+                    if (section > 0) {
+                        pending.add(submit(workers, text, line, column));
+                    }
+                    writeAll(pending, output);
+                    inFlight = 0;
+                    stream(rest, ended, input, sectionLine, sectionColumn,
+                           output);
+                    text.setLength(0);
+                    section = 0;
+                    if (input.peek() == -1) {
+                        break;
+                    }
+                    line = sectionLine = input.line();
+                    column = sectionColumn = input.column();
+                    continue;
+                }
+                if (c != -1 && (c != '*' || text.length() < CHUNK)) {
+                    for (int i = 1; i < input.column(); i += 1) {
+                        text.append(' ');
+                    }
+                    if (c == '*') {
+                        section = text.length();
+                        sectionLine = input.line();
+                        sectionColumn = input.column();
+                    }
+                    continue;
+                }
+                Chunk chunk = submit(workers, text, line, column);
+                pending.add(chunk);
+                inFlight += chunk._len;
+                text.setLength(0);
+                section = 0;
+                while (!pending.isEmpty()
+                       && (inFlight > _window
+                           || pending.peek()._result.isDone())) {
+                    inFlight -= write(pending.remove(), output);
+                }
+                if (c == -1) {
+                    break;
+                }
+                line = sectionLine = input.line();
+                column = sectionColumn = input.column();
+            }
+            writeAll(pending, output);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Return a chunk of TEXT, starting at line LINE and column COLUMN of
+     *  the input, that has been handed to WORKERS. */
+    private Chunk submit(ExecutorService workers, StringBuilder text,
+                         int line, int column) {
+        Chunk chunk = new Chunk(text, line, column);
+        chunk._result = workers.submit(chunk);
+        return chunk;
+    }
+
+    /** Write the chunks in PENDING to OUTPUT in order, removing them. */
+    private void writeAll(ArrayDeque<Chunk> pending, ChannelWriter output) {
+        while (!pending.isEmpty()) {
+            write(pending.remove(), output);
+        }
+    }
+
+    /** Convert the section whose text so far is START, which begins at
+     *  line LINE and column COLUMN of the input, and whose remaining
+     *  lines are read from INPUT, writing the result to OUTPUT.  START
+     *  ends with a complete line iff ATLINESTART. */
+    private void stream(String start, boolean atLineStart, Lexer input,
+                        int line, int column, ChannelWriter output) {
+        GroupFormatter formatter =
+            new GroupFormatter(output, Main.GROUP_SIZE, Main.LINE_WIDTH);
+        try {
+            Main.processSection(_machine,
+                                new SectionReader(start, atLineStart, input),
+                                line, column, formatter, _cache);
+        } finally {
+            formatter.flush();
+        }
+    }
+
+    /** Wait for CHUNK to be converted and write its output to OUTPUT,
+     *  then report its error, if any.  Returns its number of input
+     *  characters. */
+    private int write(Chunk chunk, ChannelWriter output) {
+        try {
+            chunk._result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        chunk._output.flush(output);
+        if (chunk._error != null) {
+            throw chunk._error;
+        }
+        return chunk._len;
+    }
+
+    /** A run of whole sections of input and its conversion. */
+    private class Chunk implements Callable<Chunk> {
+
+        /** The chunk whose text is TEXT, starting at line LINE and column
+         *  COLUMN of the input. */
+        Chunk(StringBuilder text, int line, int column) {
+            _len = text.length();
+            _text = new char[_len];
+            text.getChars(0, _len, _text, 0);
+            _line = line;
+            _column = column;
+            _output = new GroupFormatter(null, Main.GROUP_SIZE,
+                                         Main.LINE_WIDTH,
+                                         _len + _len / Main.GROUP_SIZE);
+        }
+
+        @Override
+        public Chunk call() {
+            try {
+                Main.processSection(_machine, _text, _len, _line, _column,
+                                    _output, _cache);
+            } catch (EnigmaException excp) {
+                _error = excp;
+            }
+            _text = null;
+            return this;
+        }
+
+        /** Number of characters of input. */
+        private final int _len;
+
+        /** The input, until converted. */
+        private char[] _text;
+
+        /** Position of the start of _text in the input. */
+        private final int _line, _column;
+
+        /** Formatter holding my output. */
+        private final GroupFormatter _output;
+
+        /** The error that ended my conversion, if any. */
+        private EnigmaException _error;
+
+        /** Completion of my conversion. */
+        private Future<Chunk> _result;
+    }
+
+    /** The text of a section read a piece of at most CHUNK characters at
+     *  a time: the start of the section already read, followed by the
+     *  lines of the input up to the next settings line or the end of the
+     *  input.  Lines are indented with spaces so that their characters
+     *  keep their columns. */
+    private static final class SectionReader implements Readable {
+
+        /** The section whose text so far is START, continued from INPUT.
+         *  START ends with a complete line iff ATLINESTART. */
+        SectionReader(String start, boolean atLineStart, Lexer input) {
+            _text = new StringBuilder(start);
+            _atLineStart = atLineStart;
+            _input = input;
+        }
+
+        @Override
+        public int read(CharBuffer target) {
+            while (_pos == _text.length()) {
+                if (_done) {
+                    return -1;
+                }
+                _text.setLength(0);
+                _pos = 0;
+                if (_atLineStart) {
+                    _input.skipBlanks();
+                    int c = _input.peek();
+                    if (c == '*' || c == -1) {
+                        _done = true;
+                        return -1;
+                    }
+                    for (int i = 1; i < _input.column(); i += 1) {
+                        _text.append(' ');
+                    }
+                }
+                _atLineStart = _input.copyLine(_text, CHUNK);
+            }
+            int n = Math.min(target.remaining(), _text.length() - _pos);
+            target.append(_text, _pos, _pos + n);
+            _pos += n;
+            return n;
+        }
+
+        /** The piece of text being read. */
+        private final StringBuilder _text;
+
+        /** Number of characters of _text already read. */
+        private int _pos;
+
+        /** True iff the input is at the start of a line. */
+        private boolean _atLineStart;
+
+        /** True once the section has ended. */
+        private boolean _done;
+
+        /** Source of the rest of the section. */
+        private final Lexer _input;
+    }
+
+    /** Machine whose copies convert the sections. */
+    private final Machine _machine;
+
+    /** Number of threads. */
+    private final int _threads;
+
+    /** Bound on the input characters in progress. */
+    private final int _window;
+
+    /** Keystream cache, or null. */
+    private final KeystreamCache _cache;
+
+}
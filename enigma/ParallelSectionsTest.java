@@ -0,0 +1,158 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import static enigma.MachineTest.navalRotors;
+import static enigma.TestUtils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The suite of all JUnit tests for the ParallelSections class.
+ *  @author Duc Nguyen
+ */
+public class ParallelSectionsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an input of COUNT sections with random keys, blank lines
+     *  and indentation, generated from SEED. */
+    private String input(int count, long seed) {
+        Random random = new Random(seed);
+        String[] moving = { "I", "II", "III", "IV", "V", "VI", "VII" };
+        StringBuilder text = new StringBuilder("\n  \n");
+        for (int s = 0; s < count; s += 1) {
+            text.append("  ".substring(random.nextInt(3)));
+            text.append("* B Beta");
+            for (int i = 0; i < 3; i += 1) {
+                text.append(' ').append(moving[(s + 2 * i) % moving.length]);
+            }
+            text.append(' ');
+            for (int i = 0; i < 4; i += 1) {
+                text.append(UPPER_STRING.charAt(random.nextInt(26)));
+            }
+            text.append(s % 3 == 0 ? " (AQ) (EX)\n" : "\n");
+            for (int n = random.nextInt(5); n > 0; n -= 1) {
+                if (random.nextInt(5) == 0) {
+                    text.append("   ".substring(random.nextInt(4)));
+                } else {
+                    for (int i = random.nextInt(60); i >= 0; i -= 1) {
+                        text.append(random.nextInt(6) == 0 ? ' '
+                                    : UPPER_STRING.charAt(random.nextInt(26)));
+                    }
+                }
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return the output of Main converting INPUT one section after
+     *  another, followed by the error it reports, if any. */
+    private String sequential(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter out =
+            new ChannelWriter(Channels.newChannel(bytes), UTF_8);
+        String error = "";
+        try {
+            new Main(new Machine(UPPER, 5, 3, navalRotors()),
+                     new StringReader(input), out).process();
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        return bytes.toString(UTF_8) + error;
+    }
+
+    /** Return the output of converting INPUT on THREADS threads with a
+     *  window of WINDOW characters, followed by the error reported, if
+     *  any. */
+    private String parallel(String input, int threads, int window) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter out =
+            new ChannelWriter(Channels.newChannel(bytes), UTF_8);
+        Lexer lexer = new Lexer(new StringReader(input));
+        lexer.skipWhitespace();
+        String error = "";
+        try {
+            new ParallelSections(new Machine(UPPER, 5, 3, navalRotors()),
+                                 threads, window, null).process(lexer, out);
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        } finally {
+            out.close();
+        }
+        return bytes.toString(UTF_8) + error;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesSequential() {
+        String input = input(4000, 1);
+        assertTrue(input.length() > 3 * ParallelSections.CHUNK);
+        String expected = sequential(input);
+        assertEquals(expected, parallel(input, 4, 1 << 20));
+        assertEquals(expected, parallel(input, 3, 1));
+        assertEquals(expected, parallel(input, 1, 1 << 20));
+    }
+
+    @Test
+    public void shortInputs() {
+        for (String input : new String[] {
+                "* B Beta I II III AAAA", "* B Beta I II III AAAA\n",
+                "* B Beta I II III AAAA\nHELLO\n\n   \n"
+                + "* B Beta I II III ABCD\nWORLD",
+                "  * B Beta I II III AAAA\n  \n  " }) {
+            assertEquals(sequential(input), parallel(input, 2, 1 << 20));
+        }
+    }
+
+    @Test
+    public void errorsAfterEarlierOutput() {
+        String input = input(3000, 2);
+        int cut = input.indexOf('\n', 2 * input.length() / 3);
+        String broken = input.substring(0, cut) + "\n   HELLO wORLD"
+            + input.substring(cut);
+        String expected = sequential(broken);
+        assertTrue(expected.endsWith("'w' is not in the alphabet"));
+        assertEquals(expected, parallel(broken, 4, 1 << 20));
+        assertEquals(expected, parallel(broken, 2, 1));
+    }
+
+    @Test
+    public void streamsLargeSections() {
+        Random random = new Random(3);
+        StringBuilder big = new StringBuilder("* B Beta I II III ABCD\n");
+        while (big.length() < 4 * ParallelSections.CHUNK) {
+            for (int i = random.nextInt(3 * ParallelSections.CHUNK / 2);
+                 i >= 0; i -= 1) {
+                big.append(random.nextInt(6) == 0 ? ' '
+                           : UPPER_STRING.charAt(random.nextInt(26)));
+            }
+            big.append("\n  ".substring(0, 1 + random.nextInt(3)));
+        }
+        big.append('\n');
+        String input = input(200, 3) + big + input(200, 4);
+        String expected = sequential(input);
+        assertEquals(expected, parallel(input, 3, 4));
+        assertEquals(expected, parallel(input, 2, ParallelSections.CHUNK));
+        assertEquals(expected, parallel(input, 2, 1 << 22));
+        int cut = input.indexOf(big.toString()) + 3 * big.length() / 4;
+        String broken = input.substring(0, cut) + "HELLO wORLD"
+            + input.substring(cut);
+        expected = sequential(broken);
+        assertTrue(expected.endsWith("'w' is not in the alphabet"));
+        assertEquals(expected, parallel(broken, 3, 4));
+    }
+
+}
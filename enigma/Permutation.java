@@ -1,5 +1,8 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -11,23 +14,87 @@ class Permutation {
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored. The mapping is compiled once into dense
+     *  forward and inverse tables; no character may appear twice. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        String temp = cycles.trim();
-        temp = temp.replace("(", " ");
-        temp = temp.replace(")", " ");
-        temp = temp.trim();
-        _cycles = temp.split("\\s+");
+        int n = alphabet.size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            _forward[i] = _inverse[i] = -1;
+        }
+        int start = -1;
+        for (int i = 0; i <= cycles.length(); i += 1) {
+            char c = i < cycles.length() ? cycles.charAt(i) : ' ';
+            boolean separator = c == '(' || c == ')'
+                    || Character.isWhitespace(c);
+            if (separator && start >= 0) {
+                addCycle(cycles.substring(start, i));
+                start = -1;
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (_forward[i] == -1) {
+                _forward[i] = _inverse[i] = i;
+            }
+        }
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET to
+     *  FORWARD[I], which must be a bijection.  FORWARD is not copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        int n = alphabet.size();
+        if (forward.length != n) {
+            throw error("Permutation error! table has wrong size");
+        }
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = new int[n];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < n; i += 1) {
+            int to = forward[i];
+            if (to < 0 || to >= n || _inverse[to] != -1) {
+                throw error("Permutation error! table is not a bijection");
+            }
+            _inverse[to] = i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        String[] tmp = new String[_cycles.length + 1];
-        System.arraycopy(_cycles, 0, tmp, 0, _cycles.length);
-        tmp[_cycles.length] = cycle;
-        _cycles = tmp;
+        int first = index(cycle.charAt(0));
+        _forward[first] = first;
+        int prev = first;
+        for (int i = 1; i < cycle.length(); i += 1) {
+            int curr = index(cycle.charAt(i));
+            link(prev, curr);
+            prev = curr;
+        }
+        link(prev, first);
+    }
+
+    /** Return the index of cycle character CH, which must be in my
+     *  alphabet and not yet used by any cycle, including the one being
+     *  added: its first character is marked used as soon as it is read. */
+    private int index(char ch) {
+        if (!_alphabet.contains(ch)) {
+            throw error("Permutation error! '%c' not in alphabet", ch);
+        }
+        int result = _alphabet.toInt(ch);
+        if (_forward[result] != -1 || _inverse[result] != -1) {
+            throw error("Permutation error! '%c' appears twice", ch);
+        }
+        return result;
+    }
+
+    /** Record that FROM maps to TO. */
+    private void link(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -41,49 +108,19 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int applyInput = wrap(p);
-        char applyChar = _alphabet.toChar(applyInput);
-        int translatedIndex = -1;
-        char translatedChar = ' ';
-        for (String sublist : _cycles) {
-            for (int i = 0; i < sublist.length(); i += 1) {
-                if (sublist.charAt(i) == applyChar) {
-                    translatedIndex = (i + 1) % sublist.length();
-                    translatedChar = sublist.charAt(translatedIndex);
-                    return _alphabet.toInt(translatedChar);
-                }
-            }
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to C modulo the alphabet size. */
     int invert(int c) {
-        int contactEntered = wrap(c);
-        char charEntered = _alphabet.toChar(contactEntered);
-        int translatedIndex = -1;
-        char translatedChar = ' ';
-        for (String sublist : _cycles) {
-            for (int i = sublist.length() - 1; i >= 0; i -= 1) {
-                if (sublist.charAt(i) == charEntered) {
-                    if (i == 0) {
-                        translatedIndex = sublist.length() - 1;
-                    } else {
-                        translatedIndex = i - 1;
-                    }
-                    translatedChar = sublist.charAt(translatedIndex);
-                    return _alphabet.toInt(translatedChar);
-                }
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -109,18 +146,75 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (String sublist : _cycles) {
-            if (sublist.length() == 0 || sublist.length() == 1) {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Return the permutation that applies me and then NEXT (written
+     *  "AD" for me A and NEXT D in Rejewski's notation).  NEXT must
+     *  have my alphabet. */
+    Permutation then(Permutation next) {
+        if (next.size() != size()) {
+            throw error("Permutation error! sizes differ");
+        }
+        int[] result = new int[size()];
+        compose(_forward, next._forward, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the lengths of my cycles (including fixed points), longest
+     *  first: my cycle type. */
+    int[] cycleType() {
+        int[] lengths = new int[size()];
+        int count = cycleType(_forward, lengths, new boolean[size()]);
+        return Arrays.copyOf(lengths, count);
+    }
+
+    /** Set RESULT[i] to SECOND[FIRST[i]] for each i, composing the
+     *  permutations whose forward tables are FIRST and SECOND.  RESULT
+     *  must be distinct from FIRST. */
+    static void compose(int[] first, int[] second, int[] result) {
+        for (int i = 0; i < first.length; i += 1) {
+            result[i] = second[first[i]];
+        }
+    }
+
+    /** Put the lengths of the cycles of the permutation whose forward
+     *  table is PERM into LENGTHS, longest first, and return their
+     *  number.  SEEN is scratch space at least as long as PERM. */
+    static int cycleType(int[] perm, int[] lengths, boolean[] seen) {
+        Arrays.fill(seen, 0, perm.length, false);
+        int count = 0;
+        for (int i = 0; i < perm.length; i += 1) {
+            if (!seen[i]) {
+                int length = 0;
+                for (int j = i; !seen[j]; j = perm[j]) {
+                    seen[j] = true;
+                    length += 1;
+                }
+                int k = count;
+                while (k > 0 && lengths[k - 1] < length) {
+                    lengths[k] = lengths[k - 1];
+                    k -= 1;
+                }
+                lengths[k] = length;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
+
+    /** _forward[i] is the image of index i under this permutation. */
+    private final int[] _forward;
 
-    /** Cycles of this permutation as an array of sub-arrays. */
-    private String[] _cycles;
+    /** _inverse[i] is the preimage of index i under this permutation. */
+    private final int[] _inverse;
 
 }
@@ -51,4 +51,66 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalA() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkDerangement() {
+        assertFalse(new Permutation("", UPPER).derangement());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).derangement());
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).derangement());
+        assertFalse(new Permutation("(AB)", UPPER).derangement());
+    }
+
+    @Test
+    public void checkThen() {
+        Permutation a = new Permutation("(ABC) (DE)", UPPER);
+        Permutation b = new Permutation("(AD) (BZ)", UPPER);
+        perm = a.then(b);
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(b.permute(a.permute(c)), perm.permute(c));
+        }
+        assertEquals('Z', perm.permute('A'));
+    }
+
+    @Test
+    public void checkCycleType() {
+        assertArrayEquals(new int[] { 3, 2, 1, 1 },
+                          new Permutation("(AB) (CDE)",
+                                          new Alphabet("ABCDEFG"))
+                          .cycleType());
+        assertEquals(26, new Permutation("", UPPER).cycleType().length);
+        assertArrayEquals(new int[] { 10, 4, 4, 3, 2, 2, 1 },
+                          new Permutation(NAVALA.get("I"), UPPER)
+                          .cycleType());
+        int[] type = new Permutation(NAVALA.get("B"), UPPER).cycleType();
+        assertEquals(13, type.length);
+        assertEquals(2, type[0]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void repeatedCharacter() {
+        new Permutation("(ABC) (DA)", UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void repeatedFirstCharacter() {
+        new Permutation("(ABA)", UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void repeatedCharacterInPair() {
+        new Permutation("(CC)", UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void characterNotInAlphabet() {
+        new Permutation("(AB) (C$)", UPPER);
+    }
+
 }
@@ -0,0 +1,103 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/** A Readable that reads ahead of its consumer: a reader thread, started
+ *  by the first read, fills the slots of a Ring from another Readable, so
+ *  that waiting for input and decoding it overlap with whatever the
+ *  consumer does with the characters.  Each slot is published as soon as
+ *  one read of the source fills it, so interactive input is not held
+ *  back.  A failure of the source is reported by the read that reaches
+ *  it.
+ *  @author Duc Nguyen
+ */
+final class ReadAhead implements Readable, Closeable {
+
+    /** A reader of SOURCE through a ring of SLOTS slots (a power of 2)
+     *  of CAPACITY characters each. */
+    ReadAhead(Readable source, int slots, int capacity) {
+        _source = source;
+        _ring = new Ring(slots, capacity);
+    }
+
+    @Override
+    public int read(CharBuffer target) throws IOException {
+        while (_slot == null || _pos == _slot.length) {
+            if (_slot == null) {
+                if (_reader == null) {
+                    _reader = new Thread(this::fill, "enigma-reader");
+                    _reader.setDaemon(true);
+                    _reader.start();
+                }
+            } else if (_slot.last) {
+                return -1;
+            } else {
+                _ring.release();
+            }
+            _slot = _ring.take();
+            _pos = 0;
+            if (_slot == null) {
+                return -1;
+            }
+            Exception failure = _slot.error;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+        }
+        int n = Math.min(target.remaining(), _slot.length - _pos);
+        target.put(_slot.chars, _pos, n);
+        _pos += n;
+        return n;
+    }
+
+    /** Body of the reader thread: fill slots from _source until it is
+     *  exhausted or fails, or I am closed. */
+    private void fill() {
+        Ring.Slot slot;
+        while ((slot = _ring.claim()) != null) {
+            try {
+                CharBuffer buffer = slot.buffer;
+                buffer.clear();
+                int n;
+                do {
+                    n = _source.read(buffer);
+                } while (n == 0);
+                slot.length = buffer.position();
+                slot.last = n < 0;
+            } catch (IOException | RuntimeException excp) {
+                slot.error = excp;
+                slot.last = true;
+            }
+            _ring.publish();
+            if (slot.last) {
+                return;
+            }
+        }
+    }
+
+    /** Stop reading ahead. */
+    @Override
+    public void close() {
+        _ring.close();
+    }
+
+    /** Source of the characters. */
+    private final Readable _source;
+
+    /** Slots passed from the reader thread to me. */
+    private final Ring _ring;
+
+    /** The reader thread, once started. */
+    private Thread _reader;
+
+    /** Slot being consumed, or null before the first. */
+    private Ring.Slot _slot;
+
+    /** Position of the next character of _slot to consume. */
+    private int _pos;
+
+}
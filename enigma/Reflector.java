@@ -13,6 +13,21 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A reflector with wiring WIRING. */
+    Reflector(Wiring wiring) {
+        super(wiring);
+    }
+
+    /** A copy of ORIGINAL. */
+    Reflector(Reflector original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
+    }
+
     @Override
     boolean reflecting() {
         return true;
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.error;
+
+/** A bounded queue of character batches from one producer thread to one
+ *  consumer thread.  The batches live in a ring of slots allocated once:
+ *  the producer claims the next free slot, fills it and publishes it; the
+ *  consumer takes the next published slot and releases it when done,
+ *  after which the producer reuses it.  The only shared state is the two
+ *  counts of slots published and released.  A thread that has to wait
+ *  spins briefly, then yields, then parks until the other side signals
+ *  it.
+ *  @author Duc Nguyen
+ */
+final class Ring {
+
+    /** Number of times a waiting thread spins before yielding, and then
+     *  yields before parking. */
+    static final int SPINS = 100;
+
+    /** Longest time a waiting thread parks before checking again, in
+     *  nanoseconds. */
+    static final long PARK_NANOS = 1_000_000;
+
+    /** A batch of characters in a ring. */
+    static final class Slot {
+
+        /** A slot holding up to CAPACITY characters. */
+        Slot(int capacity) {
+            chars = new char[capacity];
+            buffer = CharBuffer.wrap(chars);
+        }
+
+        /** The characters; chars[0 .. length) are valid. */
+        final char[] chars;
+
+        /** A buffer wrapping chars. */
+        final CharBuffer buffer;
+
+        /** Number of valid characters. */
+        int length;
+
+        /** True iff no slots follow this one. */
+        boolean last;
+
+        /** The failure that ended production here, if any. */
+        Exception error;
+    }
+
+    /** A ring of SIZE slots, a power of 2, each holding up to CAPACITY
+     *  characters. */
+    Ring(int size, int capacity) {
+        if (size <= 0 || (size & (size - 1)) != 0) {
+            throw error("ring size must be a power of 2");
+        }
+        _slots = new Slot[size];
+        for (int i = 0; i < size; i += 1) {
+            _slots[i] = new Slot(capacity);
+        }
+        _mask = size - 1;
+    }
+
+    /** Producer: return the next slot to fill, emptied, waiting until one
+     *  is free.  Returns null once I have been closed. */
+    Slot claim() {
+        long head = _published;
+        for (int spins = 0; head - _released > _mask && !_closed;
+             spins += 1) {
+            if (spins < 2 * SPINS) {
+                pause(spins);
+            } else {
+                _producer = Thread.currentThread();
+                if (head - _released > _mask && !_closed) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                _producer = null;
+            }
+        }
+        if (_closed) {
+            return null;
+        }
+        Slot slot = _slots[(int) head & _mask];
+        slot.length = 0;
+        slot.last = false;
+        slot.error = null;
+        return slot;
+    }
+
+    /** Producer: pass the slot last claimed to the consumer. */
+    void publish() {
+        _published += 1;
+        Thread consumer = _consumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /** Consumer: return the next published slot, waiting until there is
+     *  one.  Returns null if there is none and I have been closed. */
+    Slot take() {
+        long tail = _released;
+        for (int spins = 0; _published == tail; spins += 1) {
+            if (_closed) {
+                return null;
+            }
+            if (spins < 2 * SPINS) {
+                pause(spins);
+            } else {
+                _consumer = Thread.currentThread();
+                if (_published == tail && !_closed) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                _consumer = null;
+            }
+        }
+        return _slots[(int) tail & _mask];
+    }
+
+    /** Consumer: give the slot last taken back to the producer. */
+    void release() {
+        _released += 1;
+        Thread producer = _producer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /** Stop both sides: from now on, claim() returns null, and so does
+     *  take() instead of waiting. */
+    void close() {
+        _closed = true;
+        Thread thread = _producer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        thread = _consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /** Wait a little, having waited SPINS times already. */
+    private static void pause(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /** The slots, used in turn. */
+    private final Slot[] _slots;
+
+    /** Number of slots less 1. */
+    private final int _mask;
+
+    /** Numbers of slots published and released so far.  Each is written
+     *  only by its own side. */
+    private volatile long _published, _released;
+
+    /** The producer and consumer, while parked waiting, else null. */
+    private volatile Thread _producer, _consumer;
+
+    /** True once I have been closed. */
+    private volatile boolean _closed;
+
+}
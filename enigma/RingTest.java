@@ -0,0 +1,187 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The suite of all JUnit tests for the Ring class and the pipeline
+ *  stages built on it, ReadAhead and WriteBehind.
+ *  @author Duc Nguyen
+ */
+public class RingTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a text of LINES numbered lines. */
+    private String text(int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return everything read from SOURCE, 100 characters at a time. */
+    private String readAll(Readable source) throws IOException {
+        StringBuilder result = new StringBuilder();
+        CharBuffer buffer = CharBuffer.allocate(100);
+        while (source.read(buffer) >= 0) {
+            buffer.flip();
+            result.append(buffer);
+            buffer.clear();
+        }
+        return result.toString();
+    }
+
+    /** Write message lines FROM .. TO-1 to OUT, line I holding I % 300
+     *  and then I % 7 characters. */
+    private void format(GroupFormatter out, int from, int to) {
+        char[] chars = new char[300];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = (char) ('A' + i % 26);
+        }
+        for (int i = from; i < to; i += 1) {
+            out.write(chars, 0, i % chars.length);
+            out.write(chars, 0, i % 7);
+            out.endLine();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void passesSlotsInOrder() throws InterruptedException {
+        Ring ring = new Ring(4, 1);
+        int count = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i += 1) {
+                Ring.Slot slot = ring.claim();
+                slot.chars[0] = (char) i;
+                slot.length = 1;
+                slot.last = i == count - 1;
+                ring.publish();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i += 1) {
+            Ring.Slot slot = ring.take();
+            assertEquals(1, slot.length);
+            assertEquals((char) i, slot.chars[0]);
+            assertEquals(i == count - 1, slot.last);
+            ring.release();
+        }
+        producer.join();
+    }
+
+    @Test
+    public void closeStopsWaiting() {
+        Ring ring = new Ring(2, 1);
+        ring.claim();
+        ring.publish();
+        ring.claim();
+        ring.publish();
+        ring.close();
+        assertNull(ring.claim());
+        assertNotNull(ring.take());
+        ring.release();
+        assertNotNull(ring.take());
+        ring.release();
+        assertNull(ring.take());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void sizeIsPowerOfTwo() {
+        new Ring(6, 10);
+    }
+
+    @Test
+    public void readAheadReadsEverything() throws IOException {
+        String text = text(20000);
+        ReadAhead ahead = new ReadAhead(new StringReader(text), 4, 64);
+        assertEquals(text, readAll(ahead));
+        assertEquals(-1, ahead.read(CharBuffer.allocate(10)));
+        ahead.close();
+    }
+
+    @Test
+    public void readAheadReportsFailure() throws IOException {
+        StringReader text = new StringReader(text(100));
+        Readable failing = buffer -> {
+            int n = text.read(buffer);
+            if (n < 0) {
+                throw new IOException("disk on fire");
+            }
+            return n;
+        };
+        ReadAhead ahead = new ReadAhead(failing, 8, 50);
+        CharBuffer buffer = CharBuffer.allocate(100);
+        int total = 0;
+        try {
+            for (int n = ahead.read(buffer); n >= 0; n = ahead.read(buffer)) {
+                total += n;
+                buffer.clear();
+            }
+            fail("failure not reported");
+        } catch (IOException excp) {
+            assertEquals("disk on fire", excp.getMessage());
+        }
+        assertEquals(text(100).length(), total);
+        ahead.close();
+    }
+
+    @Test
+    public void writeBehindFormatsAsGroupFormatter() {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ChannelWriter out =
+            new ChannelWriter(Channels.newChannel(expected), UTF_8);
+        GroupFormatter direct = new GroupFormatter(out, 5, 23);
+        format(direct, 0, 3000);
+        direct.flush();
+        out.close();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        out = new ChannelWriter(Channels.newChannel(actual), UTF_8);
+        WriteBehind behind = new WriteBehind(out, 5, 23, 4, 100);
+        format(behind, 0, 1000);
+        behind.flush();
+        format(behind, 1000, 3000);
+        behind.flush();
+        out.close();
+        assertEquals(expected.toString(UTF_8), actual.toString(UTF_8));
+    }
+
+    @Test
+    public void writeBehindReportsFailure() {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        ChannelWriter out =
+            new ChannelWriter(Channels.newChannel(failing), UTF_8);
+        WriteBehind behind = new WriteBehind(out, 5, 0, 4, 100);
+        try {
+            format(behind, 0, 10000);
+            behind.flush();
+            fail("failure not reported");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("disk full"));
+        }
+    }
+
+}
@@ -1,35 +1,88 @@
 package enigma;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor is
+ *  a small, mutable position (setting and ring setting) on an immutable
+ *  Wiring that it shares with its copies.
  *  @author Duc Nguyen
  */
 class Rotor {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
-        _name = name;
-        _permutation = perm;
+        this(new Wiring(name, perm, ""));
+    }
+
+    /** A rotor in its 0 setting with wiring WIRING. */
+    Rotor(Wiring wiring) {
+        _wiring = wiring;
+        _size = wiring.alphabet().size();
         _currSetting = 0;
     }
 
+    /** A rotor with the same wiring and settings as ORIGINAL. */
+    Rotor(Rotor original) {
+        _wiring = original._wiring;
+        _size = original._size;
+        _permutation = original._permutation;
+        _shiftedForward = original._shiftedForward;
+        _shiftedBackward = original._shiftedBackward;
+        _currSetting = original._currSetting;
+        _ringSetting = original._ringSetting;
+        _offset = original._offset;
+        _row = original._row;
+    }
+
+    /** Return a rotor like me whose settings change independently of
+     *  mine. */
+    Rotor copy() {
+        return new Rotor(this);
+    }
+
+    /** Obtain my wiring's permutation, and start converting through its
+     *  shifted tables (see Wiring.tables), if my alphabet is small enough
+     *  for them.  Until then, conversions shift arithmetically. */
+    void prepare() {
+        permutation();
+        if (_shiftedForward == null) {
+            int[][] tables = _wiring.tables();
+            if (tables != null) {
+                _shiftedForward = tables[0];
+                _shiftedBackward = tables[1];
+            }
+        }
+    }
+
+    /** Return my wiring. */
+    Wiring wiring() {
+        return _wiring;
+    }
+
     /** Return my name. */
     String name() {
-        return _name;
+        return _wiring.name();
     }
 
     /** Return my alphabet. */
     Alphabet alphabet() {
-        return _permutation.alphabet();
+        return _wiring.alphabet();
     }
 
     /** Return my permutation. */
     Permutation permutation() {
+        if (_permutation == null) {
+            _permutation = _wiring.permutation();
+        }
         return _permutation;
     }
 
     /** Return the size of my alphabet. */
     int size() {
-        return _permutation.size();
+        return _size;
+    }
+
+    /** Return the characters of my notch positions, if any. */
+    String notches() {
+        return _wiring.notches();
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -55,45 +108,72 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _currSetting = posn;
+        updateOffset();
     }
 
     /** Set ringSetting() to POSN. */
     void setRing(int posn) {
         _ringSetting = posn;
+        updateOffset();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _currSetting = _permutation.alphabet().toInt(cposn);
+        _currSetting = alphabet().toInt(cposn);
+        updateOffset();
     }
 
     /** Set ringSetting() to character CPOSN. */
     void setRing(char cposn) {
-        _ringSetting = _permutation.alphabet().toInt(cposn);
+        _ringSetting = alphabet().toInt(cposn);
+        updateOffset();
+    }
+
+    /** Move me one position forward, updating my offset and row
+     *  without any division. */
+    final void step() {
+        int n = size();
+        _currSetting = _currSetting + 1 == n ? 0 : _currSetting + 1;
+        _offset = _offset + 1 == n ? 0 : _offset + 1;
+        _row = _offset * n;
+    }
+
+    /** Recompute _offset and _row from my setting and ring setting. */
+    private void updateOffset() {
+        _offset = Math.floorMod(_currSetting - _ringSetting, _size);
+        _row = _offset * size();
     }
 
     /** Return the conversion of P (an integer in the range 0...size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int contactEntered = (p + _currSetting - _ringSetting) % size();
-        int contactExited = _permutation.permute(contactEntered)
-                - _currSetting + _ringSetting;
-        if (contactExited < 0) {
-            return (size() - Math.abs(contactExited)) % size();
+        if (_shiftedForward != null) {
+            return _shiftedForward[_row + p];
         }
-        return contactExited % size();
+        return unshift(permutation().permute(shift(p)));
     }
 
     /** Return the conversion of E (an integer in the range 0...size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int contactEntered = (e + _currSetting - _ringSetting) % size();
-        int contactExited = _permutation.invert(contactEntered)
-                - _currSetting + _ringSetting;
-        if (contactExited < 0) {
-            return (size() - Math.abs(contactExited)) % size();
+        if (_shiftedBackward != null) {
+            return _shiftedBackward[_row + e];
         }
-        return contactExited % size();
+        return unshift(permutation().invert(shift(e)));
+    }
+
+    /** Return the contact of my wiring that position P enters at my
+     *  current offset. */
+    private int shift(int p) {
+        int r = p + _offset;
+        return r >= size() ? r - size() : r;
+    }
+
+    /** Return the position at which wiring contact C exits at my current
+     *  offset. */
+    private int unshift(int c) {
+        int r = c - _offset;
+        return r < 0 ? r + size() : r;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -102,19 +182,28 @@ class Rotor {
         return false;
     }
 
+    /** Return the number of advances needed before atNotch() holds, or
+     *  -1 if it never will. By default, returns -1. */
+    int distanceToNotch() {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
     @Override
     public String toString() {
-        return "Rotor " + _name;
+        return "Rotor " + name();
     }
 
-    /** My name. */
-    private final String _name;
+    /** My wiring, shared with my copies. */
+    private final Wiring _wiring;
+
+    /** Size of my alphabet. */
+    private final int _size;
 
-    /** The permutation implemented by this rotor in its 0 position. */
+    /** The permutation of _wiring, or null until first needed. */
     private Permutation _permutation;
 
     /** My current setting. */
@@ -123,4 +212,18 @@ class Rotor {
     /** My current Ringstellung setting. */
     private int _ringSetting;
 
+    /** My setting minus my ring setting, modulo size(). */
+    private int _offset;
+
+    /** Start of the row for _offset in my shifted tables. */
+    private int _row;
+
+    /** _shiftedForward[d * size() + p] is convertForward(p) when the
+     *  offset is d, or null if not prepared.  Shared with _wiring. */
+    private int[] _shiftedForward;
+
+    /** _shiftedBackward[d * size() + e] is convertBackward(e) when the
+     *  offset is d, or null if not prepared.  Shared with _wiring. */
+    private int[] _shiftedBackward;
+
 }
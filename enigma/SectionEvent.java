@@ -0,0 +1,45 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** A Flight Recorder event for one message section: a settings line and
+ *  the message lines after it.  Its duration runs from the end of the
+ *  settings line (whose parsing is timed by parseNanos) to the end of the
+ *  section.
+ *  @author Duc Nguyen
+ */
+@Name("enigma.Section")
+@Label("Enigma Section")
+@Category("Enigma")
+@Description("A settings line and the messages converted with it")
+class SectionEvent extends jdk.jfr.Event {
+
+    @Label("Characters")
+    long characters;
+
+    @Label("Rotor Advances")
+    long rotorAdvances;
+
+    @Label("Notch Hits")
+    long notchHits;
+
+    @Label("Double Steps")
+    long doubleSteps;
+
+    @Label("Parse Time")
+    @Timespan
+    long parseNanos;
+
+    @Label("Convert Time")
+    @Timespan
+    long convertNanos;
+
+    @Label("Write Time")
+    @Timespan
+    long writeNanos;
+
+}
@@ -0,0 +1,303 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.error;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** A long-running Enigma service.  It loads a configuration once and
+ *  serves encryption requests over a loopback TCP port or a Unix-domain
+ *  socket, so that requests run on a warmed-up JVM.
+ *
+ *  Requests and responses are streamed as runs of frames, each a 4-byte
+ *  big-endian length of at most MAX_FRAME followed by that many bytes,
+ *  and ended by a frame of length 0.  The bytes of a request are UTF-8
+ *  text that is exactly what Main accepts as input (a settings line and
+ *  the message lines after it, possibly several sections).  They are
+ *  converted as they arrive, and the response's frames carry what Main
+ *  prints as it is produced, followed after the ending frame by a single
+ *  status frame: "OK", or "ERROR\n" and the error message, in which case
+ *  the output before it is what Main prints before reporting the error.
+ *  A client sending a long request should read the response while it
+ *  writes.  A connection may carry any number of requests.
+ *
+ *  Usage: java enigma.Server CONFIG PORT-OR-SOCKET-PATH
+ *  @author Duc Nguyen
+ */
+public final class Server {
+
+    /** Largest frame accepted or sent, in bytes. */
+    static final int MAX_FRAME = ChannelWriter.BUFFER_SIZE;
+
+    /** Serve requests using the configuration named ARGS[0] on the
+     *  address ARGS[1]: a port number on the loopback interface, or the
+     *  path of a Unix-domain socket. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.Server CONFIG ADDRESS");
+            }
+            Machine template = ConfigImage.loadFor(args[0]);
+            if (template == null) {
+                template = Main.readConfig(args[0]);
+            }
+            Server server = new Server(template);
+            server.serve(bind(args[1]));
+            return;
+        } catch (EnigmaException | IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A server whose connections each use a copy of TEMPLATE. */
+    Server(Machine template) {
+        _template = template;
+    }
+
+    /** Return a server channel bound to ADDRESS, a loopback port number
+     *  or a Unix-domain socket path. */
+    static ServerSocketChannel bind(String address) throws IOException {
+        SocketAddress where;
+        ServerSocketChannel channel;
+        if (address.matches("\\d+")) {
+            where = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          Integer.parseInt(address));
+            channel = ServerSocketChannel.open();
+        } else {
+            Path path = Paths.get(address);
+            Files.deleteIfExists(path);
+            where = UnixDomainSocketAddress.of(path);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        }
+        channel.bind(where);
+        return channel;
+    }
+
+    /** Accept connections on LISTENER until it is closed, handling each
+     *  on its own (virtual, where available) thread. */
+    void serve(ServerSocketChannel listener) throws IOException {
+        ExecutorService workers = newWorkers();
+        try {
+            while (listener.isOpen()) {
+                SocketChannel connection;
+                try {
+                    connection = listener.accept();
+                } catch (IOException excp) {
+                    if (!listener.isOpen()) {
+                        break;
+                    }
+                    throw excp;
+                }
+                workers.execute(() -> handle(connection));
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread if
+     *  this JVM supports them, and on a pooled platform thread if not. */
+    private static ExecutorService newWorkers() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "enigma-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Serve the requests arriving on CONNECTION until it is closed. */
+    private void handle(SocketChannel connection) {
+        Machine machine = _idle.poll();
+        if (machine == null) {
+            machine = _template.copy();
+        }
+        try (SocketChannel channel = connection) {
+            serve(machine, Channels.newInputStream(channel),
+                  Channels.newOutputStream(channel));
+        } catch (IOException excp) {
+            return;
+        } finally {
+            _idle.add(machine);
+        }
+    }
+
+    /** Answer each request read from IN with a response on OUT,
+     *  converting with MACHINE, until IN is exhausted. */
+    void serve(Machine machine, InputStream in, OutputStream out)
+        throws IOException {
+        DataInputStream frames = new DataInputStream(in);
+        DataOutputStream replies = new DataOutputStream(out);
+        while (true) {
+            int length;
+            try {
+                length = frames.readInt();
+            } catch (EOFException excp) {
+                return;
+            }
+            respond(machine, new FrameInput(frames, length), replies);
+            replies.flush();
+        }
+    }
+
+    /** Convert the request read by REQUEST with MACHINE, streaming the
+     *  response onto REPLIES. */
+    static void respond(Machine machine, FrameInput request,
+                        DataOutputStream replies) throws IOException {
+        FrameOutput response = new FrameOutput(replies);
+        String status = "OK";
+        try {
+            new Main(machine,
+                     new ChannelReader(Channels.newChannel(request), UTF_8),
+                     new ChannelWriter(Channels.newChannel(response), UTF_8))
+                .process();
+        } catch (EnigmaException excp) {
+            status = "ERROR\n" + excp.getMessage();
+        }
+        request.skipRest();
+        response.close();
+        byte[] bytes = status.getBytes(UTF_8);
+        replies.writeInt(bytes.length);
+        replies.write(bytes);
+    }
+
+    /** The bytes of a run of frames. */
+    static final class FrameInput extends InputStream {
+
+        /** The bytes of the run of frames read from FRAMES whose first
+         *  frame's length, LENGTH, has been read already. */
+        FrameInput(DataInputStream frames, int length) throws IOException {
+            _frames = frames;
+            start(length);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (_remaining == 0) {
+                if (_ended) {
+                    return -1;
+                }
+                start(_frames.readInt());
+            }
+            int n = _frames.read(b, off, Math.min(len, _remaining));
+            if (n < 0) {
+                throw new EOFException("request ended in a frame");
+            }
+            _remaining -= n;
+            return n;
+        }
+
+        /** Read and discard what remains of the frames. */
+        void skipRest() throws IOException {
+            byte[] rest = new byte[MAX_FRAME];
+            while (read(rest, 0, rest.length) >= 0) {
+                continue;
+            }
+        }
+
+        /** Start a frame of LENGTH bytes, the last if LENGTH is 0. */
+        private void start(int length) throws IOException {
+            if (length < 0 || length > MAX_FRAME) {
+                throw new IOException("bad frame length " + length);
+            }
+            _remaining = length;
+            _ended = length == 0;
+        }
+
+        /** Source of the frames. */
+        private final DataInputStream _frames;
+
+        /** Number of bytes left in the current frame. */
+        private int _remaining;
+
+        /** True once the ending frame has been read. */
+        private boolean _ended;
+    }
+
+    /** A stream of bytes sent as a run of frames, ended when closed. */
+    static final class FrameOutput extends OutputStream {
+
+        /** A stream sending its frames to FRAMES. */
+        FrameOutput(DataOutputStream frames) {
+            _frames = frames;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (_closed) {
+                throw new IOException("response already ended");
+            }
+            while (len > 0) {
+                int n = Math.min(len, MAX_FRAME);
+                _frames.writeInt(n);
+                _frames.write(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        /** Send the ending frame, unless already sent.  FRAMES is left
+         *  open. */
+        @Override
+        public void close() throws IOException {
+            if (!_closed) {
+                _closed = true;
+                _frames.writeInt(0);
+            }
+        }
+
+        /** Destination of the frames. */
+        private final DataOutputStream _frames;
+
+        /** True once the ending frame has been sent. */
+        private boolean _closed;
+    }
+
+    /** Configured machine copied for each new connection. */
+    private final Machine _template;
+
+    /** Machines left warm by finished connections, ready for reuse. */
+    private final ConcurrentLinkedQueue<Machine> _idle =
+        new ConcurrentLinkedQueue<>();
+
+}
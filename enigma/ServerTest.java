@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Duc Nguyen
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A request in Main's input format. */
+    private static final String REQUEST =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n";
+
+    /** Return a machine like the one loaded by the server. */
+    private Machine machine() {
+        return MachineTest.navalMachine(
+            new String[] { "B", "Beta", "III", "IV", "I" }, "AAAA", "");
+    }
+
+    /** Write TEXT to OUT as a request, in frames of at most SIZE
+     *  bytes. */
+    private void request(String text, int size, DataOutputStream out)
+        throws IOException {
+        byte[] bytes = text.getBytes(UTF_8);
+        for (int at = 0; at < bytes.length; at += size) {
+            int n = Math.min(size, bytes.length - at);
+            out.writeInt(n);
+            out.write(bytes, at, n);
+        }
+        out.writeInt(0);
+        out.flush();
+    }
+
+    /** Read a response from IN, returning its output followed by its
+     *  status frame. */
+    private String response(DataInputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int n = in.readInt(); n != 0; n = in.readInt()) {
+            assertTrue(n > 0 && n <= Server.MAX_FRAME);
+            bytes.write(in.readNBytes(n));
+        }
+        bytes.write(in.readNBytes(in.readInt()));
+        return bytes.toString(UTF_8);
+    }
+
+    /** Return the responses of a server converting with a fresh machine
+     *  to REQUESTS, each sent in frames of at most SIZE bytes. */
+    private String[] serve(int size, String... requests)
+        throws IOException {
+        ByteArrayOutputStream in = new ByteArrayOutputStream();
+        for (String text : requests) {
+            request(text, size, new DataOutputStream(in));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Server(machine()).serve(machine(),
+                                    new ByteArrayInputStream(in.toByteArray()),
+                                    out);
+        DataInputStream replies =
+            new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        String[] result = new String[requests.length];
+        for (int i = 0; i < requests.length; i += 1) {
+            result[i] = response(replies);
+        }
+        assertEquals(-1, replies.read());
+        return result;
+    }
+
+    @Test
+    public void respond() throws IOException {
+        String[] replies =
+            serve(7, REQUEST, "* B Beta I\n", "", REQUEST + "HELLo\n",
+                  REQUEST);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\nOK", replies[0]);
+        assertTrue(replies[1].startsWith("ERROR\n"));
+        assertTrue(replies[2].startsWith("ERROR\n"));
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n"
+                     + "ERROR\nline 3, column 5: 'o' is not in the alphabet",
+                     replies[3]);
+        assertEquals(replies[0], replies[4]);
+    }
+
+    @Test
+    public void streamsLongRequests() throws IOException {
+        StringBuilder text = new StringBuilder(REQUEST);
+        String message = MachineTest.randomMessage(100000);
+        for (int i = 0; i < 20; i += 1) {
+            text.append(message).append('\n');
+        }
+        Machine m = machine();
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                       TestUtils.UPPER));
+        m.convert("FROMHISSHOULDERHIAWATHA");
+        String converted = m.convert(message);
+        String reply = serve(Server.MAX_FRAME, text.toString())[0];
+        assertTrue(reply.endsWith("\nOK"));
+        assertTrue(reply.contains(converted.substring(0, 5) + " "
+                                  + converted.substring(5, 10) + " "));
+        assertEquals(28 + 20 * (100000 + 100000 / 5) + 2, reply.length());
+    }
+
+    @Test
+    public void overSocket() throws Exception {
+        ServerSocketChannel listener = Server.bind("0");
+        int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+        Server server = new Server(machine());
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve(listener);
+            } catch (IOException excp) {
+                return;
+            }
+        });
+        thread.start();
+        try (SocketChannel client = SocketChannel.open(
+                 new InetSocketAddress("localhost", port))) {
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(client));
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(client));
+            for (int i = 0; i < 3; i += 1) {
+                request(REQUEST, 1000, out);
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\nOK",
+                             response(in));
+            }
+        } finally {
+            listener.close();
+            thread.join();
+        }
+    }
+}
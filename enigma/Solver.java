@@ -0,0 +1,501 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/** A ciphertext-only attack.  It first decrypts the ciphertext at every
+ *  rotor order and start position a configuration allows (with ring
+ *  settings of 0 and no plugboard) and keeps the candidates whose
+ *  decryptions have the highest index of coincidence.  For each of
+ *  those, it then hill-climbs the ring settings of the two rightmost
+ *  rotors (by index of coincidence) and the plugboard pairs (by n-gram
+ *  score), then both again by n-gram score, and ranks the resulting
+ *  keys by n-gram score.
+ *
+ *  Both stages run on a work-stealing ForkJoinPool.  Each task decrypts
+ *  into buffers it allocated once, so the inner loops allocate nothing.
+ *
+ *  Usage: java enigma.Solver CONFIG CORPUS CIPHERTEXT [COUNT]
+ *  prints the best COUNT (default 10) keys, best first, as settings
+ *  lines, scoring with the quadgrams of the text file CORPUS.
+ *  @author Duc Nguyen
+ */
+public final class Solver {
+
+    /** Number of settings tried by one task before it stops splitting. */
+    static final int LEAF_SIZE = 1 << 9;
+
+    /** Length of the n-grams used by main. */
+    static final int ORDER = 4;
+
+    /** Number of first-stage candidates climbed by main. */
+    static final int CANDIDATES = 500;
+
+    /** Run the attack described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.Solver CONFIG CORPUS "
+                            + "CIPHERTEXT [COUNT]");
+            }
+            Machine machine = ConfigImage.loadFor(args[0]);
+            if (machine == null) {
+                machine = Main.readConfig(args[0]);
+            }
+            int count;
+            try {
+                count = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            } catch (NumberFormatException excp) {
+                throw error("count is not an integer: %s", args[3]);
+            }
+            NGramScorer scorer =
+                NGramScorer.load(machine.alphabet(), ORDER, args[1]);
+            Solver solver = new Solver(machine, args[2], scorer);
+            List<Key> keys = solver.solve(ForkJoinPool.commonPool(),
+                                          Math.max(count, CANDIDATES));
+            for (Key key : keys.subList(0, Math.min(count, keys.size()))) {
+                System.out.println(key);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A solver for the non-blank characters of CIPHERTEXT, using the
+     *  rotors and slots of MACHINE, and SCORER to rank plaintexts. */
+    Solver(Machine machine, String ciphertext, NGramScorer scorer) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _scorer = scorer;
+        int[] cipher = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (!Lexer.isBlank(c)) {
+                if (!_alphabet.contains(c)) {
+                    throw error("'%c' is not in the alphabet", c);
+                }
+                cipher[n] = _alphabet.toInt(c);
+                n += 1;
+            }
+        }
+        if (n < 2) {
+            throw error("ciphertext too short");
+        }
+        _cipher = new int[n];
+        System.arraycopy(cipher, 0, _cipher, 0, n);
+        _orders = machine.rotorOrders();
+        _positions = (long) Math.pow(_size, machine.numRotors() - 1);
+        if (_positions * _orders.size() > Long.MAX_VALUE / 2) {
+            throw error("search space too large");
+        }
+    }
+
+    /** Return the keys found by climbing from the best COUNT settings of
+     *  the first stage, best first, working in parallel on POOL. */
+    List<Key> solve(ForkJoinPool pool, int count) {
+        Best best = pool.invoke(new Survey(0, _positions * _orders.size(),
+                                           count));
+        Key[] keys = new Key[best._length];
+        pool.invoke(new Climbs(best, 0, keys.length, keys));
+        ArrayList<Key> result = new ArrayList<>(Arrays.asList(keys));
+        Collections.sort(result);
+        return result;
+    }
+
+    /** The COUNT highest-scoring settings seen by a task. */
+    private static class Best {
+
+        /** An empty list of up to COUNT settings. */
+        Best(int count) {
+            _scores = new long[count];
+            _settings = new long[count];
+        }
+
+        /** Record setting number SETTING with score SCORE, dropping the
+         *  lowest-scoring setting if I am full. */
+        void offer(long setting, long score) {
+            int k = _length;
+            if (k == _scores.length) {
+                if (k == 0 || score <= _scores[k - 1]) {
+                    return;
+                }
+                k -= 1;
+            } else {
+                _length += 1;
+            }
+            while (k > 0 && _scores[k - 1] < score) {
+                _scores[k] = _scores[k - 1];
+                _settings[k] = _settings[k - 1];
+                k -= 1;
+            }
+            _scores[k] = score;
+            _settings[k] = setting;
+        }
+
+        /** Add the settings of OTHER to mine, returning me. */
+        Best merge(Best other) {
+            for (int k = 0; k < other._length; k += 1) {
+                offer(other._settings[k], other._scores[k]);
+            }
+            return this;
+        }
+
+        /** _scores[0 .. _length) and _settings[0 .. _length) are my
+         *  settings, highest score first. */
+        private final long[] _scores, _settings;
+
+        /** Number of settings held. */
+        private int _length;
+    }
+
+    /** The first stage over settings numbered [_lo, _hi). */
+    private class Survey extends RecursiveTask<Best> {
+
+        /** Survey settings LO .. HI-1, keeping the best COUNT. */
+        Survey(long lo, long hi, int count) {
+            _lo = lo;
+            _hi = hi;
+            _count = count;
+        }
+
+        @Override
+        protected Best compute() {
+            if (_hi - _lo > LEAF_SIZE) {
+                long mid = (_lo + _hi) >>> 1;
+                Survey right = new Survey(mid, _hi, _count);
+                right.fork();
+                Best left = new Survey(_lo, mid, _count).compute();
+                return left.merge(right.join());
+            }
+            Best result = new Best(_count);
+            Decrypter d = new Decrypter();
+            for (long k = _lo; k < _hi; k += 1) {
+                d.setUp(k);
+                result.offer(k, d.coincidences());
+            }
+            return result;
+        }
+
+        /** Bounds of my settings. */
+        private final long _lo, _hi;
+
+        /** Number of settings to keep. */
+        private final int _count;
+    }
+
+    /** The second stage for candidates [_lo, _hi) of a Best. */
+    private class Climbs extends RecursiveAction {
+
+        /** Climb from the settings LO .. HI-1 of CANDIDATES, storing the
+         *  key found from each setting at its index in KEYS. */
+        Climbs(Best candidates, int lo, int hi, Key[] keys) {
+            _candidates = candidates;
+            _lo = lo;
+            _hi = hi;
+            _keys = keys;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                _keys[_lo] = new Climber().climb(_candidates._settings[_lo]);
+            } else if (_hi > _lo) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Climbs(_candidates, _lo, mid, _keys),
+                          new Climbs(_candidates, mid, _hi, _keys));
+            }
+        }
+
+        /** Settings to climb from. */
+        private final Best _candidates;
+
+        /** Bounds of my candidates. */
+        private final int _lo, _hi;
+
+        /** Destination of my keys. */
+        private final Key[] _keys;
+    }
+
+    /** A private machine and buffers for decrypting my ciphertext at one
+     *  setting after another.  Setting number k selects position
+     *  k % _positions and rotor order k / _positions. */
+    private class Decrypter {
+
+        /** A decrypter with its own machine. */
+        Decrypter() {
+            _m = _machine.copy();
+            _m.setPlugboard(new Permutation("", _alphabet));
+            _settings = new int[_machine.numRotors() - 1];
+            _rings = new int[_settings.length];
+            _counts = new int[_size];
+        }
+
+        /** Insert the rotors and record the positions of setting number
+         *  K, with all ring settings 0. */
+        void setUp(long k) {
+            int order = (int) (k / _positions);
+            if (order != _order) {
+                _order = order;
+                _m.insertRotors(_orders.get(order));
+            }
+            long position = k % _positions;
+            for (int i = _settings.length - 1; i >= 0; i -= 1) {
+                _settings[i] = (int) (position % _size);
+                _rings[i] = 0;
+                position /= _size;
+            }
+        }
+
+        /** Return the index of coincidence of my decryption at my
+         *  current settings, scaled by N(N-1) for a ciphertext of length
+         *  N, so that it is an integer. */
+        long coincidences() {
+            _m.setRings(_rings);
+            _m.restoreSettings(_settings);
+            int[] counts = _counts;
+            for (int c = 0; c < _size; c += 1) {
+                counts[c] = 0;
+            }
+            for (int c : _cipher) {
+                _m.advance();
+                counts[_m.substitute(c)] += 1;
+            }
+            long result = 0;
+            for (int count : counts) {
+                result += (long) count * (count - 1);
+            }
+            return result;
+        }
+
+        /** My machine, with no plugboard. */
+        final Machine _m;
+
+        /** Current rotor positions and ring settings. */
+        final int[] _settings, _rings;
+
+        /** Index in _orders of the rotors in _m, or -1. */
+        int _order = -1;
+
+        /** Letter counts of the last decryption. */
+        private final int[] _counts;
+    }
+
+    /** The second stage for one candidate setting. */
+    private class Climber extends Decrypter {
+
+        /** A climber with its own machine and buffers. */
+        Climber() {
+            _scrambler = new int[_cipher.length * _size];
+            _plugboard = new int[_size];
+            _plain = new int[_cipher.length];
+            _trial = new int[_cipher.length];
+            _changed = new int[_cipher.length];
+        }
+
+        /** Return the best key found by climbing from setting number K. */
+        Key climb(long k) {
+            setUp(k);
+            for (int c = 0; c < _size; c += 1) {
+                _plugboard[c] = c;
+            }
+            climbRings(false);
+            fillScrambler();
+            climbPlugboard();
+            climbRings(true);
+            fillScrambler();
+            double score = climbPlugboard();
+            return Key.of(_alphabet, _orders.get(_order), _settings, _rings,
+                          _plugboard, score);
+        }
+
+        /** Try every ring setting of the two rightmost rotors, when they
+         *  move, adjusting their positions so that their wiring stays
+         *  where the first stage found it, and keep the combination that
+         *  scores best: by n-gram score with _plugboard if NGRAMS, and by
+         *  index of coincidence otherwise.  This moves the turnover
+         *  points without disturbing the rest of the decryption. */
+        private void climbRings(boolean ngrams) {
+            int last = _settings.length - 1;
+            int right = _m.rotorRotates(last + 1) ? _size : 1;
+            int middle = last > 0 && _m.rotorRotates(last) ? _size : 1;
+            int rightStart = offset(last);
+            int middleStart = last > 0 ? offset(last - 1) : 0;
+            double best = Double.NEGATIVE_INFINITY;
+            int bestRight = 0, bestMiddle = 0;
+            for (int r = 0; r < right; r += 1) {
+                for (int s = 0; s < middle; s += 1) {
+                    shiftRing(last, rightStart, r);
+                    if (last > 0) {
+                        shiftRing(last - 1, middleStart, s);
+                    }
+                    double score = ngrams ? decryptScore() : coincidences();
+                    if (score > best) {
+                        best = score;
+                        bestRight = r;
+                        bestMiddle = s;
+                    }
+                }
+            }
+            shiftRing(last, rightStart, bestRight);
+            if (last > 0) {
+                shiftRing(last - 1, middleStart, bestMiddle);
+            }
+        }
+
+        /** Return the position of rotor I of my settings that would put
+         *  its wiring where it is now if its ring setting were 0. */
+        private int offset(int i) {
+            return ((_settings[i] - _rings[i]) % _size + _size) % _size;
+        }
+
+        /** Give rotor I of my settings ring setting RING and the position
+         *  that puts its wiring where position START with ring 0 would. */
+        private void shiftRing(int i, int start, int ring) {
+            _rings[i] = ring;
+            _settings[i] = (start + ring) % _size;
+        }
+
+        /** Fill _scrambler with the conversions at each ciphertext
+         *  position at my current settings. */
+        private void fillScrambler() {
+            _m.setRings(_rings);
+            _m.restoreSettings(_settings);
+            for (int i = 0; i < _cipher.length; i += 1) {
+                _m.advance();
+                int row = i * _size;
+                for (int c = 0; c < _size; c += 1) {
+                    _scrambler[row + c] = _m.substitute(c);
+                }
+            }
+        }
+
+        /** Return the n-gram score of my decryption at my current
+         *  settings and _plugboard, converting with _m directly. */
+        private double decryptScore() {
+            int[] plug = _plugboard;
+            _m.setRings(_rings);
+            _m.restoreSettings(_settings);
+            for (int i = 0; i < _cipher.length; i += 1) {
+                _m.advance();
+                _plain[i] = plug[_m.substitute(plug[_cipher[i]])];
+            }
+            return _scorer.score(_plain, _plain.length);
+        }
+
+        /** Decrypt my ciphertext with _plugboard into TEXT, using
+         *  _scrambler. */
+        private void decrypt(int[] text) {
+            int[] plug = _plugboard;
+            for (int i = 0; i < _cipher.length; i += 1) {
+                text[i] = plug[_scrambler[i * _size + plug[_cipher[i]]]];
+            }
+        }
+
+        /** Return the n-gram score of the decryption with _plugboard,
+         *  which differs from _plain only where one plugboard change
+         *  moved letters, given that BEST is the score of _plain.  The
+         *  decryption is left in _trial. */
+        private double rescore(double best) {
+            decrypt(_trial);
+            int count = 0;
+            for (int i = 0; i < _trial.length; i += 1) {
+                if (_trial[i] != _plain[i]) {
+                    _changed[count] = i;
+                    count += 1;
+                }
+            }
+            return _scorer.rescore(_plain, _trial, _trial.length, best,
+                                   _changed, count);
+        }
+
+        /** Improve _plugboard one pair at a time for as long as that
+         *  raises the score, and return the final score.  Each step tries
+         *  connecting, or disconnecting, every pair of letters, rescoring
+         *  only the n-grams whose letters that changes. */
+        private double climbPlugboard() {
+            int[] plug = _plugboard;
+            decrypt(_plain);
+            double best = _scorer.score(_plain, _plain.length);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _size; a += 1) {
+                    for (int b = a + 1; b < _size; b += 1) {
+                        int oldA = plug[a], oldB = plug[b];
+                        if (oldA == b) {
+                            plug[a] = a;
+                            plug[b] = b;
+                        } else {
+                            plug[oldA] = oldA;
+                            plug[oldB] = oldB;
+                            plug[a] = b;
+                            plug[b] = a;
+                        }
+                        double score = rescore(best);
+                        if (score > best) {
+                            best = score;
+                            improved = true;
+                            int[] swap = _plain;
+                            _plain = _trial;
+                            _trial = swap;
+                        } else {
+                            plug[a] = a;
+                            plug[b] = b;
+                            plug[oldA] = a;
+                            plug[a] = oldA;
+                            plug[oldB] = b;
+                            plug[b] = oldB;
+                        }
+                    }
+                }
+            }
+            return _scorer.score(_plain, _plain.length);
+        }
+
+        /** _scrambler[i * _size + c] is the conversion, without
+         *  plugboard, of C at ciphertext position I. */
+        private final int[] _scrambler;
+
+        /** The plugboard being climbed, as the involution it performs. */
+        private final int[] _plugboard;
+
+        /** Decryption with _plugboard, and the decryption being tried. */
+        private int[] _plain, _trial;
+
+        /** Positions at which _trial differs from _plain. */
+        private final int[] _changed;
+    }
+
+    /** Machine whose rotors and slots are searched. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Ranks plaintexts in the second stage. */
+    private final NGramScorer _scorer;
+
+    /** Ciphertext as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Every rotor order to try. */
+    private final List<String[]> _orders;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+}
@@ -0,0 +1,142 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Solver and NGramScorer classes.
+ *  @author Duc Nguyen
+ */
+public class SolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** An English message. */
+    private static final String PLAIN =
+        "THEWEATHERTODAYWILLBECLEARWITHSTRONGWINDSFROMTHENORTHWEST"
+        + "ANDTHESHIPSSHOULDREMAININTHEHARBOURUNTILTHESTORMHASPASSED"
+        + "THEREPORTFROMTHECOASTALSTATIONSAYSTHATVISIBILITYISGOODBUT"
+        + "THESEAISROUGHANDTHECONVOYWILLBEDELAYEDBYATLEASTTWODAYS";
+
+    /** Return a 3-slot, 2-pawl machine with reflector B and rotors I, II
+     *  and III, with no rotors inserted. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        String[][] moving = { { "I", "Q" }, { "II", "E" }, { "III", "V" } };
+        for (String[] rotor : moving) {
+            all.add(new MovingRotor(rotor[0],
+                                    new Permutation(NAVALA.get(rotor[0]),
+                                                    UPPER),
+                                    rotor[1]));
+        }
+        return new Machine(UPPER, 3, 2, all);
+    }
+
+    /** Return the alphabet indices of the letters of TEXT. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void scorerPrefersCorpusText() {
+        NGramScorer scorer =
+            new NGramScorer(UPPER, 2, CharBuffer.wrap(PLAIN.toLowerCase()));
+        int[] plain = indices(PLAIN);
+        int[] shifted = new int[plain.length];
+        for (int i = 0; i < plain.length; i += 1) {
+            shifted[i] = (plain[i] + 1) % 26;
+        }
+        assertTrue(scorer.score(plain, plain.length)
+                   > scorer.score(shifted, shifted.length));
+    }
+
+    @Test
+    public void rescoreMatchesScore() {
+        NGramScorer scorer = new NGramScorer(UPPER, 4, CharBuffer.wrap(PLAIN));
+        int[] text = indices(PLAIN);
+        int[] changed = text.clone();
+        int[] positions = { 0, 3, 4, 100, text.length - 1 };
+        for (int p : positions) {
+            changed[p] = (changed[p] + 7) % 26;
+        }
+        double score = scorer.score(text, text.length);
+        assertEquals(scorer.score(changed, changed.length),
+                     scorer.rescore(text, changed, text.length, score,
+                                    positions, positions.length), 1e-3);
+    }
+
+    @Test
+    public void ordersAndBytes() throws IOException {
+        NGramScorer scorer = new NGramScorer(UPPER, 3, CharBuffer.wrap(PLAIN));
+        int[] text = indices(PLAIN);
+        byte[] bytes = new byte[text.length];
+        for (int i = 0; i < text.length; i += 1) {
+            bytes[i] = (byte) text[i];
+        }
+        assertEquals(scorer.score(text, text.length),
+                     scorer.score(bytes, bytes.length), 1e-6);
+        assertEquals(scorer.score(3, text, text.length),
+                     scorer.score(text, text.length), 0);
+        assertTrue(scorer.score(1, text, text.length)
+                   > scorer.score(2, text, text.length));
+        Path file = Files.createTempFile("enigma", ".ngrams");
+        try {
+            scorer.save(file.toString());
+            NGramScorer loaded = NGramScorer.load(UPPER, 2, file.toString());
+            assertEquals(2, loaded.order());
+            assertEquals(scorer.score(2, text, text.length),
+                         loaded.score(text, text.length), 0);
+            byte[] image = Files.readAllBytes(file);
+            for (int cut : new int[] { 6, 40, image.length - 1 }) {
+                Files.write(file, Arrays.copyOf(image, cut));
+                try {
+                    NGramScorer.load(UPPER, 2, file.toString());
+                    fail("truncated file accepted");
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("damaged"));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void recoversKey() {
+        Machine m = smallMachine();
+        new Key(new String[] { "B", "II", "I" }, "QF", "AA", "(AK) (TZ)", 0)
+            .apply(m);
+        String cipher = m.convert(PLAIN);
+        NGramScorer scorer =
+            new NGramScorer(UPPER, 3, CharBuffer.wrap(PLAIN));
+        List<Key> keys = new Solver(smallMachine(), cipher, scorer)
+            .solve(ForkJoinPool.commonPool(), 20);
+        Machine decrypt = smallMachine();
+        keys.get(0).apply(decrypt);
+        assertEquals(PLAIN, decrypt.convert(cipher));
+    }
+
+}
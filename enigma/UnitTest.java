@@ -11,7 +11,18 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      AlphabetTest.class,
+                                      MachineTest.class,
+                                      GroupFormatterTest.class,
+                                      ServerTest.class,
+                                      BombeTest.class,
+                                      SolverTest.class,
+                                      CatalogueTest.class,
+                                      KeystreamCacheTest.class,
+                                      ParallelSectionsTest.class,
+                                      RingTest.class,
+                                      MetricsTest.class));
     }
 
 }
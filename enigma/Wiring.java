@@ -0,0 +1,147 @@
+package enigma;
+
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.error;
+
+/** The immutable part of a rotor: its name, permutation and notches, and
+ *  the tables built from them (which positions have notches, how far
+ *  each position is from the next notch, and the per-offset conversion
+ *  tables).  One Wiring is shared by every Rotor made from the same
+ *  configuration entry, in any number of machines and threads; the
+ *  position of each of those rotors is kept in the Rotor itself.
+ *
+ *  The permutation of a wiring loaded from a configuration image is
+ *  decoded only when first needed, and the conversion tables are built
+ *  only when a rotor with the wiring is inserted, so that a
+ *  configuration declaring thousands of rotors costs memory mainly for
+ *  the ones in use.
+ *  @author Duc Nguyen
+ */
+final class Wiring {
+
+    /** Largest alphabet for which tables() builds a table per offset;
+     *  bigger alphabets shift arithmetically to bound memory. */
+    static final int MAX_TABLE_ALPHABET = 256;
+
+    /** The wiring of a rotor named NAME with permutation PERM (in its 0
+     *  position) and notches at the characters of NOTCHES. */
+    Wiring(String name, Permutation perm, String notches) {
+        this(name, perm.alphabet(), notches, null);
+        _permutation = perm;
+    }
+
+    /** The wiring of a rotor named NAME over ALPHABET with notches at the
+     *  characters of NOTCHES, whose permutation (in its 0 position) is
+     *  obtained from SOURCE when first needed. */
+    Wiring(String name, Alphabet alphabet, String notches,
+           Supplier<Permutation> source) {
+        _name = name;
+        _alphabet = alphabet;
+        _source = source;
+        _notches = notches;
+        int n = alphabet.size();
+        _notchAt = new boolean[n];
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notchAt[alphabet.toInt(notches.charAt(i))] = true;
+        }
+        _distances = new int[n];
+        int next = -1;
+        for (int posn = 2 * n - 1; posn >= 0; posn -= 1) {
+            if (_notchAt[posn % n]) {
+                next = posn;
+            }
+            if (posn < n) {
+                _distances[posn] = next == -1 ? -1 : next - posn;
+            }
+        }
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my permutation, obtaining it from my source on the first
+     *  call. */
+    synchronized Permutation permutation() {
+        if (_permutation == null) {
+            _permutation = _source.get();
+            if (_permutation.size() != _alphabet.size()) {
+                throw error("wiring of %s has the wrong size", _name);
+            }
+            _source = null;
+        }
+        return _permutation;
+    }
+
+    /** Return the characters of my notch positions. */
+    String notches() {
+        return _notches;
+    }
+
+    /** Return true iff I have a notch at position POSN. */
+    boolean notchAt(int posn) {
+        return _notchAt[posn];
+    }
+
+    /** Return the number of advances from position POSN to my nearest
+     *  notch, or -1 if I have none. */
+    int distanceToNotch(int posn) {
+        return _distances[posn];
+    }
+
+    /** Return my forward and backward tables, { F, B }, where
+     *  F[d * size + p] and B[d * size + p] convert P forward and backward
+     *  at offset D, or null if my alphabet is too big for them.  They
+     *  are built by the first call, once for all my rotors. */
+    synchronized int[][] tables() {
+        int n = _alphabet.size();
+        if (_tables == null && n <= MAX_TABLE_ALPHABET) {
+            Permutation perm = permutation();
+            int[] forward = new int[n * n];
+            int[] backward = new int[n * n];
+            for (int d = 0; d < n; d += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    forward[d * n + p] =
+                        perm.wrap(perm.permute(p + d) - d);
+                    backward[d * n + p] =
+                        perm.wrap(perm.invert(p + d) - d);
+                }
+            }
+            _tables = new int[][] { forward, backward };
+        }
+        return _tables;
+    }
+
+    /** My name. */
+    private final String _name;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** My permutation in the 0 position, or null until obtained from
+     *  _source. */
+    private Permutation _permutation;
+
+    /** Source of _permutation, or null once it has been obtained. */
+    private Supplier<Permutation> _source;
+
+    /** Characters of my notches. */
+    private final String _notches;
+
+    /** _notchAt[p] is true iff I have a notch at position p. */
+    private final boolean[] _notchAt;
+
+    /** _distances[p] is distanceToNotch(p). */
+    private final int[] _distances;
+
+    /** Value of tables(), or null until first needed. */
+    private int[][] _tables;
+
+}
@@ -0,0 +1,140 @@
+package enigma;
+
+/** A GroupFormatter that leaves the formatting and writing to a writer
+ *  thread.  Message characters and ends of lines are copied into the
+ *  slots of a Ring, and the writer thread, started by the first slot,
+ *  replays them onto a GroupFormatter of its own, so that grouping,
+ *  encoding and output overlap with conversion.  Ends of lines travel as
+ *  '\n', which is never a message character.  flush() waits until the
+ *  writer thread has written everything and stopped; a failure of the
+ *  writer is reported by the next write or flush.
+ *  @author Duc Nguyen
+ */
+final class WriteBehind extends GroupFormatter {
+
+    /** A formatter writing to OUT as GroupFormatter(OUT, GROUPSIZE,
+     *  LINEWIDTH) does, through a ring of SLOTS slots (a power of 2) of
+     *  CAPACITY characters each. */
+    WriteBehind(ChannelWriter out, int groupSize, int lineWidth,
+                int slots, int capacity) {
+        super(out, groupSize, lineWidth, 0);
+        _formatter = new GroupFormatter(out, groupSize, lineWidth);
+        _ring = new Ring(slots, capacity);
+    }
+
+    @Override
+    void write(char[] chars, int off, int len) {
+        while (len > 0) {
+            Ring.Slot slot = slot();
+            int n = Math.min(len, slot.chars.length - slot.length);
+            System.arraycopy(chars, off, slot.chars, slot.length, n);
+            slot.length += n;
+            off += n;
+            len -= n;
+            if (slot.length == slot.chars.length) {
+                publish(false);
+            }
+        }
+    }
+
+    @Override
+    void endLine() {
+        Ring.Slot slot = slot();
+        slot.chars[slot.length] = '\n';
+        slot.length += 1;
+        if (slot.length == slot.chars.length) {
+            publish(false);
+        }
+    }
+
+    @Override
+    void flush() {
+        if (_writer == null) {
+            return;
+        }
+        slot();
+        publish(true);
+        try {
+            _writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        _writer = null;
+        check();
+    }
+
+    /** Return the slot being filled, claiming one if need be. */
+    private Ring.Slot slot() {
+        if (_slot == null) {
+            check();
+            if (_writer == null) {
+                _writer = new Thread(this::drain, "enigma-writer");
+                _writer.setDaemon(true);
+                _writer.start();
+            }
+            _slot = _ring.claim();
+            check();
+        }
+        return _slot;
+    }
+
+    /** Pass the slot being filled to the writer thread, as the last one
+     *  iff LAST. */
+    private void publish(boolean last) {
+        _slot.last = last;
+        _slot = null;
+        _ring.publish();
+    }
+
+    /** Report a failure of the writer thread, if it has failed. */
+    private void check() {
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** Body of the writer thread: replay slots onto _formatter through
+     *  the last one, then flush it. */
+    private void drain() {
+        try {
+            while (true) {
+                Ring.Slot slot = _ring.take();
+                char[] chars = slot.chars;
+                int start = 0;
+                for (int i = 0; i < slot.length; i += 1) {
+                    if (chars[i] == '\n') {
+                        _formatter.write(chars, start, i - start);
+                        _formatter.endLine();
+                        start = i + 1;
+                    }
+                }
+                _formatter.write(chars, start, slot.length - start);
+                boolean last = slot.last;
+                _ring.release();
+                if (last) {
+                    _formatter.flush();
+                    return;
+                }
+            }
+        } catch (RuntimeException excp) {
+            _failure = excp;
+            _ring.close();
+        }
+    }
+
+    /** Formatter writing my output, used only by the writer thread. */
+    private final GroupFormatter _formatter;
+
+    /** Slots passed from me to the writer thread. */
+    private final Ring _ring;
+
+    /** The writer thread, while running. */
+    private Thread _writer;
+
+    /** Slot being filled, or null if none has been claimed. */
+    private Ring.Slot _slot;
+
+    /** The failure that stopped the writer thread, if any. */
+    private volatile RuntimeException _failure;
+
+}